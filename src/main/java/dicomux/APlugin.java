@@ -1,10 +1,14 @@
 package dicomux;
 
 import java.awt.BorderLayout;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import javax.swing.JComponent;
 import javax.swing.JPanel;
 
+import org.dcm4che2.data.DicomElement;
 import org.dcm4che2.data.DicomObject;
 
 import dicomux.settings.Settings;
@@ -18,6 +22,7 @@ public abstract class APlugin {
 	protected JComponent m_content;
 	protected KeyTag m_keyTag;
 	protected Settings m_settings;
+	protected DeferredBulkData m_bulkData;
 	
 	/**
 	 * default constructor which initializes m_content with a JPanel including a BorderLayout layout manager
@@ -35,6 +40,55 @@ public abstract class APlugin {
 		return m_settings;
 	}
 	
+	/**
+	 * Sets the source of the bulk data values which have not been loaded with the DicomObject
+	 * @param bulkData the deferred values, or null if the DicomObject is complete
+	 */
+	public void setBulkData(DeferredBulkData bulkData) {
+		m_bulkData = bulkData;
+	}
+	
+	/**
+	 * Returns the value of a bulk data element, reading it from the file if it has been deferred.
+	 * @param dcm the DicomObject holding the element
+	 * @param tag the tag of the element
+	 * @return the value, or null if there is no such element
+	 * @throws IOException
+	 */
+	protected byte[] getBulkBytes(DicomObject dcm, int tag) throws IOException {
+		if (m_bulkData != null && m_bulkData.isDeferred(dcm, tag))
+			return m_bulkData.getBytes(dcm, tag);
+		
+		DicomElement element = dcm.get(tag);
+		return (element == null) ? null : element.getBytes();
+	}
+	
+	/**
+	 * Same as getBulkBytes, but a deferred value is mapped instead of being copied in the heap.
+	 * @param dcm the DicomObject holding the element
+	 * @param tag the tag of the element
+	 * @return the value in the byte order of the DicomObject, or null if there is no such element
+	 * @throws IOException
+	 */
+	protected ByteBuffer getBulkBuffer(DicomObject dcm, int tag) throws IOException {
+		if (m_bulkData != null && m_bulkData.isDeferred(dcm, tag))
+			return m_bulkData.map(dcm, tag);
+		
+		DicomElement element = dcm.get(tag);
+		if (element == null)
+			return null;
+		
+		ByteOrder order = element.bigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+		return ByteBuffer.wrap(element.getBytes()).order(order);
+	}
+	
+	/**
+	 * Releases what the plug-in holds outside of the heap (temporary files, mappings...).<br/>
+	 * Called when its tab is closed or when another plug-in replaces it. Does nothing by default.
+	 */
+	public void close() {
+	}
+	
 	/**
 	 * this method returns the view of the plug-in. This view is controlled by the plug-in only. It's independent from Dicomux.
 	 * @return the view of the plug-in
@@ -1,6 +1,9 @@
 package dicomux;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.text.DateFormat;
 import java.text.ParseException;
@@ -157,7 +160,7 @@ public class Controller implements IController {
 		System.exit(0);
 	}
 	
-	private void openDicomObject(String tabName, DicomObject dicomObject, boolean newtab) 
+	private void openDicomObject(String tabName, DicomObject dicomObject, DeferredBulkData bulkData, boolean newtab) 
 	throws Exception {
 		// look for a suitable plug-in for the opened DicomObject
 		APlugin chosenPlugin = null;
@@ -176,6 +179,7 @@ public class Controller implements IController {
 			
 			// push the settings to the new plug-in
 			chosenPlugin.setSettings(m_settings);		
+			chosenPlugin.setBulkData(bulkData);
 			chosenPlugin.updateLanguage(Translation.getLocale());
 			
 			// push the DicomObject to the plug-in
@@ -184,6 +188,7 @@ public class Controller implements IController {
 			// create a new TabObject and fill it with all we got
 			TabObject tmp = new TabObject();
 			tmp.setDicomObj(dicomObject);
+			tmp.setBulkData(bulkData);
 			tmp.setTabActive(true);
 			tmp.setName(tabName);
 			tmp.setTabState(TabState.PLUGIN_ACTIVE);
@@ -202,9 +207,25 @@ public class Controller implements IController {
 	
 	public void openDicomURL(URL url) {
 		try {
-			DicomInputStream din = new DicomInputStream(url.openStream());
-			DicomObject dicomObject = din.readDicomObject();
-			din.close();
+			// the stream can't be read again, keep a local copy for the deferred bulk data
+			// it is deleted with the tab, or on exit if it can't be deleted before
+			File localCopy = File.createTempFile("dicomux-", ".dcm");
+			localCopy.deleteOnExit();
+			InputStream in = url.openStream();
+			OutputStream out = new FileOutputStream(localCopy);
+			try {
+				byte[] buffer = new byte[64*1024];
+				int n;
+				while ((n = in.read(buffer)) > 0)
+					out.write(buffer, 0, n);
+			} finally {
+				in.close();
+				out.close();
+			}
+			
+			DeferredBulkData bulkData = DeferredBulkData.read(localCopy);
+			bulkData.deleteOnClose();
+			DicomObject dicomObject = bulkData.getDicomObject();
 			
 			String patient = dicomObject.getString(Tag.PatientName).replace("^", " ");			
 			
@@ -215,7 +236,7 @@ public class Controller implements IController {
 					dicomTimeFormat.parse(dicomObject.getString(Tag.StudyTime)));
 			
 			String title = patient + " - " + date + " " + time;			
-			openDicomObject(title, dicomObject, true);
+			openDicomObject(title, dicomObject, bulkData, true);
 		} catch (Exception e) {
 			// something didn't work - let's show an error message
 			TabObject errorTab = new TabObject(TabState.ERROR_OPEN, true);
@@ -228,13 +249,11 @@ public class Controller implements IController {
 	
 	public void openDicomFile(String path) {
 		try {
-			// open the dicom file
+			// open the dicom file, the bulk data is read later by the plug-in
 			File fileObject = new File(path);
-			DicomInputStream din = new DicomInputStream(fileObject);
-			DicomObject dicomObject = din.readDicomObject();
-			din.close();
+			DeferredBulkData bulkData = DeferredBulkData.read(fileObject);
 			
-			openDicomObject(fileObject.getName(), dicomObject, false);
+			openDicomObject(fileObject.getName(), bulkData.getDicomObject(), bulkData, false);
 		} catch (Exception e) {
 			// something didn't work - let's show an error message
 			TabObject errorTab = new TabObject(TabState.ERROR_OPEN, true);
@@ -315,11 +334,16 @@ public class Controller implements IController {
 					APlugin selectedPlugin = m_availblePlugins.get(i).getClass().newInstance();
 					
 					// initialize the selected plug-in with all needed data
+					selectedPlugin.setSettings(m_settings);
+					selectedPlugin.setBulkData(tmp.getBulkData());
 					selectedPlugin.updateLanguage(Translation.getLocale());
 					selectedPlugin.setData(tmp.getDicomObj());
 					
 					// bind the plug-in to the workspace and write all changes to the model
+					APlugin replacedPlugin = tmp.getPlugin();
 					tmp.setPlugin(selectedPlugin);
+					if (replacedPlugin != null)
+						replacedPlugin.close();
 					m_model.setWorkspace(activeWorkspaceId, tmp);
 				}
 			}
@@ -0,0 +1,276 @@
+package dicomux;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dcm4che2.data.DicomElement;
+import org.dcm4che2.data.DicomObject;
+import org.dcm4che2.data.Tag;
+import org.dcm4che2.data.VR;
+import org.dcm4che2.io.DicomInputHandler;
+import org.dcm4che2.io.DicomInputStream;
+
+/**
+ * Parse handler which doesn't load the bulk data values (waveform samples, encapsulated documents).<br/>
+ * Only their position in the file is recorded, the value is read when a plug-in asks for it.
+ * The header is available immediately, so choosing a plug-in or listing many files stays cheap.
+ * @see APlugin#getBulkBytes(DicomObject, int)
+ */
+public class DeferredBulkData implements DicomInputHandler {
+	private static final int[] BULK_DATA_TAGS = {Tag.WaveformData, Tag.EncapsulatedDocument};
+
+	/**
+	 * where a skipped value was found: the sequence items leading to its DicomObject, and its position in the file
+	 */
+	private static class Location {
+		int[] path; //sequence tag, item index, sequence tag, item index...
+		int tag;
+		VR vr;
+		long offset;
+		int length;
+		boolean bigEndian;
+	}
+
+	private File file;
+	private boolean temporary; //the file is deleted on close
+	private DicomObject dicomObject;
+	private List<int[]> itemPath;
+	private Map<DicomElement, Integer> itemCounts;
+	private List<Location> pending;
+	private Map<DicomObject, Map<Integer, Location>> locations;
+
+	private DeferredBulkData(File file) {
+		this.file = file;
+		this.itemPath = new ArrayList<int[]>();
+		this.itemCounts = new IdentityHashMap<DicomElement, Integer>();
+		this.pending = new ArrayList<Location>();
+		this.locations = new IdentityHashMap<DicomObject, Map<Integer, Location>>();
+	}
+
+	/**
+	 * Read the file without its bulk data
+	 * @param file the dicom file
+	 * @return the handler holding the header and the position of the bulk data
+	 * @throws IOException
+	 */
+	public static DeferredBulkData read(File file) throws IOException {
+		DeferredBulkData bulkData = new DeferredBulkData(file);
+
+		DicomInputStream din = new DicomInputStream(file);
+		DicomObject dicomObject;
+		try {
+			din.setHandler(bulkData);
+			dicomObject = din.readDicomObject();
+		} finally {
+			din.close();
+		}
+
+		bulkData.resolve(dicomObject);
+		bulkData.dicomObject = dicomObject;
+		return bulkData;
+	}
+
+	/**
+	 * @return the header, the bulk data elements are present but empty
+	 * @see #readComplete()
+	 */
+	public DicomObject getDicomObject() {
+		return dicomObject;
+	}
+
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * Read the whole file again, bulk data included. To be used when every value is needed, 
+	 * to display or save all the elements: the header only has empty placeholders.
+	 * @return a complete dicom object, the header itself if nothing has been deferred
+	 * @throws IOException
+	 */
+	public DicomObject readComplete() throws IOException {
+		if(locations.isEmpty())
+			return dicomObject;
+		
+		DicomInputStream din = new DicomInputStream(file);
+		try {
+			return din.readDicomObject();
+		} finally {
+			din.close();
+		}
+	}
+
+	/**
+	 * The file is a temporary copy, to be deleted when the values are not needed anymore.
+	 * If nothing has been deferred, the header is enough and it is deleted right now.
+	 */
+	public void deleteOnClose() {
+		temporary = true;
+		if(locations.isEmpty())
+			close();
+	}
+	
+	/**
+	 * The tab showing the file is closed: a temporary file is deleted.<br/>
+	 * A file still locked by a mapping (on Windows) stays there until it is deleted on exit.
+	 */
+	public void close() {
+		if(temporary && (file.delete() || !file.exists()))
+			temporary = false;
+	}
+
+	//-- parsing
+
+	public boolean readValue(DicomInputStream in) throws IOException {
+		int tag = in.tag();
+
+		// keep track of the items we are in, so the skipped values can be found back
+		if(tag == Tag.Item && in.sq() != null) {
+			DicomElement sq = in.sq();
+			Integer count = itemCounts.get(sq);
+			int index = (count == null) ? 0 : count;
+			itemCounts.put(sq, index + 1);
+
+			itemPath.add(new int[] {sq.tag(), index});
+			try {
+				return in.readValue(in);
+			} finally {
+				itemPath.remove(itemPath.size() - 1);
+			}
+		}
+
+		// undefined length means encapsulated fragments, they are read as usual
+		if(!isBulkData(tag) || in.valueLength() <= 0 || in.getTransferSyntax().deflated())
+			return in.readValue(in);
+
+		Location location = new Location();
+		location.path = new int[itemPath.size() * 2];
+		for(int i = 0; i < itemPath.size(); i++) {
+			location.path[2*i] = itemPath.get(i)[0];
+			location.path[2*i+1] = itemPath.get(i)[1];
+		}
+		location.tag = tag;
+		location.vr = in.vr();
+		location.offset = in.getStreamPosition();
+		location.length = in.valueLength();
+		location.bigEndian = in.getTransferSyntax().bigEndian();
+		pending.add(location);
+
+		long remaining = location.length;
+		while(remaining > 0) {
+			long skipped = in.skip(remaining);
+			if(skipped <= 0)
+				throw new IOException("Unexpected end of file in " + file);
+			remaining -= skipped;
+		}
+
+		return true;
+	}
+
+	private static boolean isBulkData(int tag) {
+		for(int t: BULK_DATA_TAGS)
+			if(t == tag)
+				return true;
+
+		return false;
+	}
+
+	/**
+	 * Find the DicomObjects holding the skipped values, and put an empty element instead,
+	 * so that the plug-ins see that the value exists.
+	 */
+	private void resolve(DicomObject root) throws IOException {
+		for(Location location: pending) {
+			DicomObject item = root;
+			for(int i = 0; i < location.path.length && item != null; i += 2) {
+				DicomElement sq = item.get(location.path[i]);
+				item = (sq == null) ? null : sq.getDicomObject(location.path[i+1]);
+			}
+
+			if(item == null)
+				throw new IOException("Could not locate the bulk data " + location.tag + " in " + file);
+
+			item.putNull(location.tag, location.vr);
+			Map<Integer, Location> tags = locations.get(item);
+			if(tags == null) {
+				tags = new HashMap<Integer, Location>();
+				locations.put(item, tags);
+			}
+			tags.put(location.tag, location);
+		}
+
+		pending.clear();
+		itemCounts.clear();
+	}
+
+	//-- access
+
+	/**
+	 * @return true if the value of this element hasn't been loaded
+	 */
+	public boolean isDeferred(DicomObject dcm, int tag) {
+		return getLocation(dcm, tag) != null;
+	}
+
+	/**
+	 * @return the byte order of a deferred value
+	 */
+	public boolean bigEndian(DicomObject dcm, int tag) {
+		Location location = getLocation(dcm, tag);
+		return location != null && location.bigEndian;
+	}
+
+	private Location getLocation(DicomObject dcm, int tag) {
+		Map<Integer, Location> tags = locations.get(dcm);
+		return (tags == null) ? null : tags.get(tag);
+	}
+
+	/**
+	 * Read a deferred value from the file
+	 * @return the value, or null if this element hasn't been deferred
+	 */
+	public byte[] getBytes(DicomObject dcm, int tag) throws IOException {
+		Location location = getLocation(dcm, tag);
+		if(location == null)
+			return null;
+
+		byte[] bytes = new byte[location.length];
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.seek(location.offset);
+			raf.readFully(bytes);
+		} finally {
+			raf.close();
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Map a deferred value, the content is not copied in the heap
+	 * @return a read-only buffer in the byte order of the file, or null if this element hasn't been deferred
+	 */
+	public ByteBuffer map(DicomObject dcm, int tag) throws IOException {
+		Location location = getLocation(dcm, tag);
+		if(location == null)
+			return null;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			//the mapping stays valid once the file is closed
+			ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, location.offset, location.length);
+			return buffer.order(location.bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		} finally {
+			raf.close();
+		}
+	}
+}
@@ -35,6 +35,8 @@ public class Model implements IModel {
 	
 
 	public void initialize() {
+		for (TabObject i: m_tabObjects)
+			i.close();
 		m_tabObjects.clear();
 		
 		if(m_settings.getBoolean("dicomux.showWelcomeScreen"))
@@ -47,7 +49,10 @@ public class Model implements IModel {
 	
 
 	public void setWorkspace(int wsId, TabObject tab) {
+		TabObject replaced = m_tabObjects.get(wsId);
 		m_tabObjects.setElementAt(tab, wsId);
+		if (replaced != tab)
+			replaced.close();
 		if (tab.isTabActive())
 			setActiveWorkspace(wsId);
 		m_view.notifyView();
@@ -66,7 +71,7 @@ public class Model implements IModel {
 
 	public void removeWorkspace(int wsId) {
 		if (wsId < m_tabObjects.size() && wsId >= 0) {
-			m_tabObjects.remove(wsId);
+			m_tabObjects.remove(wsId).close();
 			
 			if (m_tabObjects.size() == 0)
 				initialize();
@@ -22,7 +22,6 @@ import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.JToggleButton;
 
-import org.dcm4che2.data.DicomElement;
 import org.dcm4che2.data.DicomObject;
 import org.dcm4che2.data.Tag;
 
@@ -356,10 +355,11 @@ public class PDFPlugin extends APlugin {
 
 	public void setData(DicomObject dcm) throws Exception {
 		if (dcm != null) {
-			DicomElement element = dcm.get(Tag.EncapsulatedDocument);			
-			if (element != null) {
-				this.pdfBytes = element.getBytes();
-				ByteBuffer buf = ByteBuffer.wrap(element.getBytes());
+			// the document may not have been loaded with the DicomObject
+			byte[] bytes = getBulkBytes(dcm, Tag.EncapsulatedDocument);
+			if (bytes != null) {
+				this.pdfBytes = bytes;
+				ByteBuffer buf = ByteBuffer.wrap(bytes);
 				
 				m_pdfFile = new PDFFile(buf);
 				showPage(1);
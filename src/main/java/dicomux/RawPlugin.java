@@ -225,6 +225,10 @@ public class RawPlugin extends APlugin {
 	
 
 	public void setData(DicomObject dcm) throws Exception{
+		// the deferred bulk data are only placeholders in dcm, this plug-in shows and saves every value
+		if (m_bulkData != null)
+			dcm = m_bulkData.readComplete();
+		
 		// create a new DefaultTableModel and extract all DicomElements of the DicomObject into it
 		m_dicom = dcm;
 		m_tree.setModel(new DefaultTreeModel(extractAllDicomElements("/", dcm))); 
@@ -19,6 +19,11 @@ public class TabObject {
 	 */
 	private DicomObject m_dicomObj;
 	
+	/**
+	 * Bulk data values of the dicom file which have not been loaded yet, may be null
+	 */
+	private DeferredBulkData m_bulkData;
+	
 	/**
 	 * Plug-in which is currently bound to that workspace
 	 */
@@ -106,6 +111,30 @@ public class TabObject {
 		m_dicomObj = dicomObj;
 	}
 	
+	/**
+	 * @return the m_bulkData
+	 */
+	public DeferredBulkData getBulkData() {
+		return m_bulkData;
+	}
+	
+	/**
+	 * @param bulkData the m_bulkData to set
+	 */
+	public void setBulkData(DeferredBulkData bulkData) {
+		m_bulkData = bulkData;
+	}
+	
+	/**
+	 * Releases the plug-in and the deferred bulk data, the tab is not shown anymore
+	 */
+	public void close() {
+		if (m_activePlugin != null)
+			m_activePlugin.close();
+		if (m_bulkData != null)
+			m_bulkData.close();
+	}
+	
 	/**
 	 * @return the m_plugin
 	 */
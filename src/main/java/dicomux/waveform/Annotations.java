@@ -10,9 +10,9 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -38,10 +38,21 @@ public class Annotations extends JPanel {
 		"qrs axis", "pp interval", "p axis", "p duration",
 		"high-pass filter", "low-pass filter", "notch filter");
 	
+	/**
+	 * Format of every measure value, the panel measures and the cursor readout alike, 
+	 * so that they show the same precision side by side in the table.<br/>
+	 * A DecimalFormat is not thread-safe: only use it on the event dispatch thread.
+	 */
+	static final DecimalFormat MEASURE_FORMAT = new DecimalFormat("##.####;-##.####");
+	
 	private List<Annotation> annotations;
 	private List<Annotation> annotationsFiltered;	
-	private List<Annotation> measures;
+	private List<Annotation> measures; //sorted by channel then name
+	private Map<String, Integer> annotationRows; //key -> row in annotations
+	private Map<String, Integer> annotationFilteredRows; //key -> row in annotationsFiltered
+	private Map<String, Annotation> annotationsByName; //lower case name -> first annotation with this name
 	private String text;	
+	private CursorReadout cursorReadout;
 	
 	private JTable annotationTable;
 	private JTable measureTable;
@@ -53,12 +64,19 @@ public class Annotations extends JPanel {
 		this.annotationsFiltered = new ArrayList<Annotation>();
 		this.measures = new ArrayList<Annotation>();
 		this.text = "";
+		this.cursorReadout = new CursorReadout(this);
 		
 		readPatientData(dcm);
 		readAcquisitionContext(dcm);
 		readFilters(dcm);
 		readWaveformAnnotations(dcm);		
 		filterAnnotations();
+		this.annotationRows = indexAnnotations(annotations);
+		this.annotationFilteredRows = indexAnnotations(annotationsFiltered);
+		this.annotationsByName = new HashMap<String, Annotation>();
+		for(Annotation a: annotations)
+			if(!annotationsByName.containsKey(a.name.toLowerCase()))
+				annotationsByName.put(a.name.toLowerCase(), a);
 		
 		JPanel annotationPanel = new JPanel(new BorderLayout());		
 		this.annotationTable = new JTable(new AnnotationTableModel(annotationsFiltered));
@@ -238,13 +256,8 @@ public class Annotations extends JPanel {
 	}
 	
 	public Annotation getAnnotation(String name) {
-		for(Annotation a: annotations) {
-			if(name.equalsIgnoreCase(a.name)) {
-				return a;
-			}
-		}
-		
-		return new Annotation(name, "");
+		Annotation a = annotationsByName.get(name.toLowerCase());
+		return (a == null) ? new Annotation(name, "") : a;
 	}
 	
 	public String getText() {
@@ -263,65 +276,146 @@ public class Annotations extends JPanel {
 		return measures;
 	}
 	
-	private void addOrReplaceAnnotation(List<Annotation> list, Annotation annotation) {
-		int oldIndex = -1;
-		for(int i=0; i<list.size();i ++) {
-			Annotation a = list.get(i);
-			if(a.annotationGroup.equals(annotation.annotationGroup) 
-					&& a.name.equals(annotation.name)
-					&& a.channel.equals(annotation.channel)
-					&& a.unit.equals(annotation.unit)) {
-				oldIndex = i;
-				break;
-			}
+	CursorReadout getCursorReadout() {
+		return cursorReadout;
+	}
+	
+	private static String getKey(Annotation a) {
+		return a.annotationGroup + '\0' + a.name + '\0' + a.channel + '\0' + a.unit;
+	}
+	
+	/**
+	 * @return the row of each annotation by key, the first one wins if there are duplicates 
+	 */
+	private static Map<String, Integer> indexAnnotations(List<Annotation> list) {
+		Map<String, Integer> rows = new HashMap<String, Integer>();
+		for(int i=0; i<list.size(); i++) {
+			String key = getKey(list.get(i));
+			if(!rows.containsKey(key))
+				rows.put(key, i);
 		}
 		
-		if(oldIndex >= 0) {
-			list.add(oldIndex, annotation);
-			list.remove(oldIndex+1);
+		return rows;
+	}
+	
+	/**
+	 * Replace the annotation with the same group, name, channel and unit, or add it at the end.
+	 * The table is told about this row only, if it shows this list.
+	 */
+	private void addOrReplaceAnnotation(List<Annotation> list, Map<String, Integer> rows, Annotation annotation) {
+		AnnotationTableModel model = (AnnotationTableModel)annotationTable.getModel();
+		String key = getKey(annotation);
+		Integer row = rows.get(key);
+		if(row != null) {
+			list.set(row, annotation);
+			if(model.data == list)
+				model.fireTableRowsUpdated(row, row);
 		} else {
+			row = list.size();
+			rows.put(key, row);
 			list.add(annotation);
+			if(model.data == list)
+				model.fireTableRowsInserted(row, row);
 		}
 	}
 	
 	public void setManualAnnotation(String name, String value, String unit, boolean important) {
 		Annotation annotation = new Annotation(name, value, unit, "-", "measure", important); 		
-		addOrReplaceAnnotation(annotations, annotation);
-		addOrReplaceAnnotation(annotationsFiltered, annotation);
+		addOrReplaceAnnotation(annotations, annotationRows, annotation);
+		addOrReplaceAnnotation(annotationsFiltered, annotationFilteredRows, annotation);
 		
-		((AnnotationTableModel)annotationTable.getModel()).fireTableDataChanged();
+		//the first annotation with this name may be the one just replaced
+		Annotation first = annotationsByName.get(name.toLowerCase());
+		if(first == null || getKey(first).equals(getKey(annotation)))
+			annotationsByName.put(name.toLowerCase(), annotation);
 	}
 	
-	public void setMeasure(String name, String channel, String value, String unit, boolean important) {
-		Annotation annotation = new Annotation(name, value, unit, channel, "measure", important); 		
-		addOrReplaceAnnotation(measures, annotation);
-		
-		Collections.sort(measures, new Comparator<Annotation>() {
-			public int compare(Annotation o1, Annotation o2) {
-				int channel = o1.channel.compareTo(o2.channel);
-				if(channel != 0)
-					return channel;
-				
-				return o1.name.compareTo(o2.name);
-			}
-		});
+	/**
+	 * Binary search of a measure
+	 * @return its row, or (-(insertion point) - 1) if there is none
+	 */
+	private int findMeasure(String channel, String name) {
+		int low = 0;
+		int high = measures.size() - 1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			Annotation a = measures.get(middle);
+			int cmp = a.channel.compareTo(channel);
+			if(cmp == 0)
+				cmp = a.name.compareTo(name);
+			
+			if(cmp < 0)
+				low = middle + 1;
+			else if(cmp > 0)
+				high = middle - 1;
+			else
+				return middle;
+		}
 		
-		((MeasureTableModel)measureTable.getModel()).fireTableDataChanged();
+		return -(low + 1);
+	}
+	
+	/**
+	 * Add or replace the measure with this name on this channel
+	 */
+	public void setMeasure(String name, String channel, String value, String unit, boolean important) {
+		MeasureTableModel model = (MeasureTableModel)measureTable.getModel();
+		int row = findMeasure(channel, name);
+		if(row >= 0) {
+			Annotation old = measures.get(row);
+			if(old.value.equals(value) && old.unit.equals(unit) && old.important == important)
+				return;
+			
+			measures.set(row, new Annotation(name, value, unit, channel, "measure", important));
+			model.fireTableRowsUpdated(row, row);
+		} else {
+			row = -row - 1;
+			measures.add(row, new Annotation(name, value, unit, channel, "measure", important));
+			model.fireTableRowsInserted(row, row);
+		}
+	}
+	
+	/**
+	 * Show the position of the cursor
+	 */
+	void setCursor(double time_ms, double value_mV) {
+		setMeasure("cursor time", "-", MEASURE_FORMAT.format(time_ms), "ms", false);
+		setMeasure("cursor value", "-", MEASURE_FORMAT.format(value_mV), "mV", false);
 	}
 	
+	void clearCursor() {
+		setMeasure("cursor time", "-", "", "", false);
+		setMeasure("cursor value", "-", "", "", false);
+	}
+	
+	/**
+	 * @param name		the measure to remove, or null for all the measures of the channel
+	 * @param channel	the channel
+	 * @return true if something has been removed
+	 */
 	public boolean removeMeasures(String name, String channel) {
-		boolean removed = false;
-		for(int i=0; i<measures.size();i++) {
-			Annotation a = measures.get(i);
-			if(a.channel.equals(channel) && (name == null || a.name.equals(name))) {
-				measures.remove(i);
-				((MeasureTableModel)measureTable.getModel()).fireTableDataChanged();
-				i--;
-				removed = true;
-			}
+		int first;
+		int last;
+		if(name != null) {
+			first = findMeasure(channel, name);
+			if(first < 0)
+				return false;
+			last = first + 1;
+		} else {
+			//the measures of a channel are contiguous, starting where the empty name would be
+			first = findMeasure(channel, "");
+			if(first < 0)
+				first = -first - 1;
+			last = first;
+			while(last < measures.size() && measures.get(last).channel.equals(channel))
+				last++;
+			if(last == first)
+				return false;
 		}
 		
-		return removed;
+		measures.subList(first, last).clear();
+		((MeasureTableModel)measureTable.getModel()).fireTableRowsDeleted(first, last - 1);
+		return true;
 	}
 	
 	
@@ -61,7 +61,11 @@ class ChannelDefinition {
 
 		String name = meaning.getValueAsString(new SpecificCharacterSet("UTF-8"), 50);
 
-		return new ChannelDefinition(name, baseline, sensitivity, sensitivityCorrection, channelUnit);
+		ChannelDefinition definition = new ChannelDefinition(name, baseline, sensitivity, sensitivityCorrection, channelUnit);
+		
+		// the mains frequency, 0 when not declared
+		definition.setNotchFrequency(object.getDouble(Tag.NotchFilterFrequency));
+		return definition;
 	}
 	
 	//--
@@ -73,6 +77,7 @@ class ChannelDefinition {
 	private ChannelUnit unit;
 	private double minimum_uV;
 	private double maximum_uV;
+	private double notchFrequency;
 				
 	public ChannelDefinition(String name, double baseline,
 			double sensitity, int sensitivityCorrection, 
@@ -130,6 +135,14 @@ class ChannelDefinition {
 		this.maximum_uV = maximum;
 	}
 
+	public double getNotchFrequency() {
+		return notchFrequency;
+	}
+
+	public void setNotchFrequency(double notchFrequency) {
+		this.notchFrequency = notchFrequency;
+	}
+
 	@Override
 	public String toString() {
 		return "<" + name + ", " + sensitivity + ", " + sensitivityCorrection + ", " + unit + ">";
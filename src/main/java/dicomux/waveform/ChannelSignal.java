@@ -0,0 +1,97 @@
+package dicomux.waveform;
+
+import dicomux.waveform.filters.Filter;
+import dicomux.waveform.filters.FilteredSampleStore;
+import dicomux.waveform.filters.LazyFilter;
+import dicomux.waveform.filters.NoopFilter;
+import dicomux.waveform.store.MinMaxIndex;
+import dicomux.waveform.store.SampleStore;
+
+/**
+ * The samples of one channel, and their filtered version.<br/>
+ * There is one signal per channel, shared by all the panels showing it (rhythm strip, 
+ * split formats...), so the samples are decoded and filtered only once.
+ */
+public class ChannelSignal {
+	private ChannelDefinition definition;
+	private SampleStore samples;
+	private MinMaxIndex index;
+	private Filter filter;
+	private MinMaxIndex filteredIndex;
+
+	public ChannelSignal(ChannelDefinition definition, SampleStore samples) {
+		this.definition = definition;
+		this.samples = samples;
+		this.index = new MinMaxIndex(samples);
+		setFilter(new NoopFilter());
+	}
+
+	/**
+	 * Run a filter on the samples, the panels have to be told about it
+	 * @see DrawingPanel#filterChanged()
+	 */
+	public void setFilter(Filter filter) {
+		this.filteredIndex = runFilter(filter);
+		this.filter = filter;
+	}
+	
+	/**
+	 * Run a filter on the samples, without changing the current one.<br/>
+	 * The samples are only read, this can be done in another thread.
+	 * @return min/max summary of the output, null for a lazy filter
+	 * @see #setFilter(Filter, MinMaxIndex)
+	 */
+	public MinMaxIndex runFilter(Filter filter) {
+		filter.init(samples);
+
+		// the outline needs the extremes of the filtered values
+		// a lazy filter has no summary, it would mean filtering everything
+		if(filter instanceof NoopFilter)
+			return index;
+		if(filter instanceof LazyFilter)
+			return null;
+		return new MinMaxIndex(new FilteredSampleStore(filter, samples.size()));
+	}
+
+	/**
+	 * Use a filter which has already been run on these samples
+	 * @param filter		the initialized filter
+	 * @param filteredIndex	min/max summary of its output
+	 */
+	public void setFilter(Filter filter, MinMaxIndex filteredIndex) {
+		this.filter = filter;
+		this.filteredIndex = filteredIndex;
+	}
+
+	public ChannelDefinition getDefinition() {
+		return definition;
+	}
+
+	/**
+	 * @return the raw samples, used for the measures
+	 */
+	public SampleStore getSamples() {
+		return samples;
+	}
+
+	/**
+	 * @return min/max summary of the raw samples
+	 */
+	public MinMaxIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the filter, initialized with the samples
+	 */
+	public Filter getFilter() {
+		return filter;
+	}
+
+	/**
+	 * @return min/max summary of the filter output, null for a lazy filter
+	 */
+	public MinMaxIndex getFilteredIndex() {
+		return filteredIndex;
+	}
+}
@@ -0,0 +1,62 @@
+package dicomux.waveform;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+/**
+ * Time and value of the sample under the mouse.<br/>
+ * The panels only record the position here on each mouse event. The measure table is
+ * updated by a timer, at most once per frame, whatever the number of events in between:
+ * the last position wins.
+ */
+class CursorReadout implements ActionListener {
+	//about one frame
+	private static final int DELAY = 40;
+
+	private Annotations annotations;
+	private Timer timer;
+
+	private boolean defined;
+	private double time_ms;
+	private double value_mV;
+
+	public CursorReadout(Annotations annotations) {
+		this.annotations = annotations;
+		this.timer = new Timer(DELAY, this);
+		this.timer.setRepeats(false);
+		this.timer.setCoalesce(true);
+	}
+
+	/**
+	 * The mouse is over a sample
+	 */
+	public void set(double time_ms, double value_mV) {
+		this.defined = true;
+		this.time_ms = time_ms;
+		this.value_mV = value_mV;
+		schedule();
+	}
+
+	/**
+	 * The mouse isn't over any sample
+	 */
+	public void clear() {
+		this.defined = false;
+		schedule();
+	}
+
+	private void schedule() {
+		//not restarted: a continuous move must still be shown while it goes on
+		if(!timer.isRunning())
+			timer.start();
+	}
+
+	public void actionPerformed(ActionEvent e) {
+		if(defined)
+			annotations.setCursor(time_ms, value_mV);
+		else
+			annotations.clearCursor();
+	}
+}
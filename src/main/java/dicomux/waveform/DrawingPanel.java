@@ -4,10 +4,14 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Toolkit;
+import java.awt.Transparency;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
@@ -15,14 +19,11 @@ import java.awt.event.MouseMotionAdapter;
 import java.awt.event.MouseMotionListener;
 import java.awt.geom.Line2D;
 import java.awt.geom.Rectangle2D;
-import java.text.DecimalFormat;
-import java.util.ArrayList;
-import java.util.List;
+import java.awt.image.BufferedImage;
 
 import javax.swing.JPanel;
 
-import dicomux.waveform.filters.Filter;
-import dicomux.waveform.filters.NoopFilter;
+import dicomux.waveform.store.SampleStore;
 import dicomux.waveform.tools.MarkersToolListener;
 import dicomux.waveform.tools.MeasureToolListener;
 
@@ -35,36 +36,49 @@ import dicomux.waveform.tools.MeasureToolListener;
  */
 public class DrawingPanel extends JPanel {	
 	private static final long serialVersionUID = 856943381513072262L;
+	private static final BasicStroke GRAPH_STROKE = new BasicStroke(0.5f);
+	private static final Font NAME_FONT = new Font("SanSerif", Font.BOLD, 11);
 	
 	private WaveformPlugin plugin;
-	private int[] data;
-	private List<Annotation> annotations;
+	private ChannelSignal signal;
+	private SampleStore samples;
+	private FiducialIndex fiducials;
+	private int fiducialChannel;
 	private float scalingWidth;
 	private ChannelDefinition definition;		
 	private int sampleCount;
 	private double valueScaling;
 	private boolean isRhythm;
-	private Filter filter;
+	private GraphRenderer renderer;
 	
 	//selected positions for measures
 	private int highlightedSample;
-	private List<SampleMarker> markers;
+	private MarkerStore markers;
 	private MeasureToolListener measureToolListener;
 	private MarkersToolListener markersToolListener;
 	
-	public DrawingPanel(WaveformPlugin plugin, int[] values, ChannelDefinition definition) {
+	//grid, graph and annotations of the visible area, the cursor and markers are drawn over it
+	private BufferedImage staticLayer;
+	private Rectangle staticLayerBounds;
+	private Dimension staticLayerSize;
+	private double staticLayerHeight;
+	
+	//where the lead name has been drawn, it follows the visible area when scrolling
+	private Rectangle nameBounds;
+	
+	public DrawingPanel(WaveformPlugin plugin, ChannelSignal signal) {
 		this.plugin = plugin;
-		this.data = values;
-		this.definition = definition;					
-		this.sampleCount = data.length;
+		this.signal = signal;
+		this.samples = signal.getSamples();
+		this.definition = signal.getDefinition();					
+		this.sampleCount = samples.size();
 		this.valueScaling = this.definition.getScaling();
 	
 		this.highlightedSample = -1;
-		this.markers = new ArrayList<SampleMarker>();		
+		this.markers = new MarkerStore();		
 		this.isRhythm = false;
 		
-		this.filter = new NoopFilter();
-		filter.init(values);
+		this.renderer = new GraphRenderer(signal.getFilter(), signal.getFilteredIndex());
 	
 		setBackground(Color.WHITE);
 		
@@ -78,9 +92,12 @@ public class DrawingPanel extends JPanel {
 		this.addMouseMotionListener(measureToolListener);		
 	}
 	
-	public void setFilter(Filter filter) {
-		this.filter = filter;
-		filter.init(this.data);
+	/**
+	 * The filter of the signal changed, draw its new output
+	 */
+	public void filterChanged() {
+		this.renderer = new GraphRenderer(signal.getFilter(), signal.getFilteredIndex());
+		invalidateStaticLayer();
 		repaint();		
 	}
 	
@@ -89,6 +106,7 @@ public class DrawingPanel extends JPanel {
 			length = plugin.getSeconds();
 				
 		this.sampleCount = (int)(length*plugin.getSamplesPerSecond());
+		invalidateStaticLayer();
 	}
 	
 	public boolean isRythm() {
@@ -99,24 +117,31 @@ public class DrawingPanel extends JPanel {
 		this.isRhythm = mode;
 	}
 	
-	public void setAnnotations(List<Annotation> annotations) {
-		this.annotations = annotations;
+	/**
+	 * @param fiducials	the fiducial points of all the channels
+	 * @param channel	the channel of this panel
+	 */
+	public void setFiducials(FiducialIndex fiducials, int channel) {
+		this.fiducials = fiducials;
+		this.fiducialChannel = channel;
+		invalidateStaticLayer();
+	}
+	
+	public void setBackground(Color bg) {
+		super.setBackground(bg);
+		invalidateStaticLayer();
 	}
 	
 	public void setHighlightedSample(int sample) {
-		if(sample < 0 || sample >= data.length) {
+		if(sample < 0 || sample >= samples.size()) {
 			highlightedSample = -1;
-			plugin.getAnnotations().setMeasure("cursor time", "-", "", "", false);
-			plugin.getAnnotations().setMeasure("cursor value", "-", "", "", false);
+			plugin.getAnnotations().getCursorReadout().clear();
 		}
 		else { 
 			highlightedSample = sample;
 			double sec = highlightedSample / (double)plugin.getSamplesPerSecond();
-			double uV = data[highlightedSample] * valueScaling;	
-			
-			DecimalFormat format = new DecimalFormat("##.####;-##.####");
-			plugin.getAnnotations().setMeasure("cursor time", "-", format.format(sec*1000), "ms", false);
-			plugin.getAnnotations().setMeasure("cursor value", "-", format.format(uV/1000), "mV", false);
+			double uV = samples.get(highlightedSample) * valueScaling;	
+			plugin.getAnnotations().getCursorReadout().set(sec*1000, uV/1000);
 		}			
 	}
 	
@@ -124,6 +149,10 @@ public class DrawingPanel extends JPanel {
 		return highlightedSample;
 	}
 	
+	public ChannelSignal getSignal() {
+		return signal;
+	}
+	
 	public int getSampleCount() {
 		return sampleCount;
 	}
@@ -135,9 +164,8 @@ public class DrawingPanel extends JPanel {
 		public void mouseEntered(MouseEvent e) {
 			setBackground(new Color(255, 255, 215));
 			
-			DecimalFormat format = new DecimalFormat("##.####;-##.####");
-			plugin.getAnnotations().setMeasure("minimum", definition.getName(), format.format(definition.getMinimum_uV()/1000), "mV", false);
-			plugin.getAnnotations().setMeasure("maximum", definition.getName(), format.format(definition.getMaximum_uV()/1000), "mV", false);				
+			plugin.getAnnotations().setMeasure("minimum", definition.getName(), Annotations.MEASURE_FORMAT.format(definition.getMinimum_uV()/1000), "mV", false);
+			plugin.getAnnotations().setMeasure("maximum", definition.getName(), Annotations.MEASURE_FORMAT.format(definition.getMaximum_uV()/1000), "mV", false);				
 		}
 		
 		public void mouseExited(MouseEvent e) {
@@ -184,97 +212,75 @@ public class DrawingPanel extends JPanel {
 	
 	public void removeMarkers() {
 		markers.clear();
+		invalidateStaticLayer();
 		plugin.getAnnotations().removeMeasures(null, definition.getName());
 	}	
 	
-	private void removeMarkers(Tool tool, SampleMarker.Type type) {
-		for(int i=0;i<markers.size();i++) {
-			SampleMarker marker = markers.get(i);
-			if(tool == marker.getTool() && (type == null || type == marker.getType())) {
-				markers.remove(i);
-				i--;
-			}
-		}
-	}
-	
-	private SampleMarker getMarker(Tool tool, SampleMarker.Type type) {
-		for(SampleMarker marker: markers) {
-			if(tool == marker.getTool() && (type == null || type == marker.getType())) {
-				return marker;
-			}
-		}
-		
-		return null;
+	private void removeMarkers(Tool tool, MarkerType type) {
+		if(markers.remove(tool, type))
+			invalidateStaticLayer();
 	}
 	
-	public void shiftMarkers(Tool tool, SampleMarker.Type type, int howMuch) {
-		for(SampleMarker marker: markers) {
-			if(tool == marker.getTool() && (type == null || type == marker.getType())) {
-				marker.setSample(marker.getSample() + howMuch);
-			}
-		}
+	/**
+	 * Move the markers, the offset of the tool changes but the markers themselves are not touched
+	 */
+	public void shiftMarkers(Tool tool, MarkerType type, int howMuch) {
+		markers.shift(tool, type, howMuch);
+		//only the measure background is in the static layer, the bars are drawn over it
+		if(tool == Tool.VERTICAL_MEASURE)
+			invalidateStaticLayer();
 	}
 	
 	public void addBasicMarker(int sample) {
-		markers.add(new SampleMarker(plugin.getSelectedTool(), SampleMarker.Type.ANY, sample));
+		markers.add(plugin.getSelectedTool(), MarkerType.ANY, sample);
 	}
 	
-	public void setMeasureMarker(int sample, SampleMarker.Type type) {
+	public void setMeasureMarker(int sample, MarkerType type) {
 		removeMarkers(plugin.getSelectedTool(), type);
 
 		plugin.getAnnotations().removeMeasures("duration", definition.getName());
 		plugin.getAnnotations().removeMeasures("difference", definition.getName());
 		plugin.getAnnotations().removeMeasures("amplitude", definition.getName());
 
-		String prefix = (type == SampleMarker.Type.START ? "start" : "stop");
-		if(sample < 0 || sample >= data.length) {
+		String prefix = (type == MarkerType.START ? "start" : "stop");
+		if(sample < 0 || sample >= samples.size()) {
 			plugin.getAnnotations().removeMeasures(prefix + " time", definition.getName());
 			plugin.getAnnotations().removeMeasures(prefix + " value", definition.getName());
 		}
 		else { 
 			double sec = sample / (double)plugin.getSamplesPerSecond();
-			double uV = data[sample] * valueScaling;
-			markers.add(new SampleMarker(plugin.getSelectedTool(), type, sample));
+			double uV = samples.get(sample) * valueScaling;
+			markers.add(plugin.getSelectedTool(), type, sample);
+			invalidateStaticLayer();
 			
-			DecimalFormat format = new DecimalFormat("##.####;-##.####");			
-			plugin.getAnnotations().setMeasure(prefix + " value", definition.getName(), format.format(uV/1000), "mV", false);
+			plugin.getAnnotations().setMeasure(prefix + " value", definition.getName(), Annotations.MEASURE_FORMAT.format(uV/1000), "mV", false);
 			if(plugin.getSelectedTool() == Tool.VERTICAL_MEASURE)
-				plugin.getAnnotations().setMeasure(prefix + " time", definition.getName(), format.format(sec*1000), "ms", false);
+				plugin.getAnnotations().setMeasure(prefix + " time", definition.getName(), Annotations.MEASURE_FORMAT.format(sec*1000), "ms", false);
 
 			setSelection();
 		}			
 	}
 
 	private void setSelection() {
-		SampleMarker start = getMarker(plugin.getSelectedTool(), SampleMarker.Type.START);
-		SampleMarker stop = getMarker(plugin.getSelectedTool(), SampleMarker.Type.STOP);
-		if(start == null || stop == null)
+		int startSample = markers.getFirst(plugin.getSelectedTool(), MarkerType.START);
+		int stopSample = markers.getFirst(plugin.getSelectedTool(), MarkerType.STOP);
+		if(startSample < 0 || stopSample < 0)
 			return;
 		
-		int startSample = start.getSample();
-		int stopSample = stop.getSample();
-		
 		double time = (stopSample-startSample) / (double)plugin.getSamplesPerSecond();
-		double diff_uV = (data[stopSample] - data[startSample]) * valueScaling;
+		double diff_uV = (samples.get(stopSample) - samples.get(startSample)) * valueScaling;
 						
-		int min = Integer.MAX_VALUE;
-		int max = Integer.MIN_VALUE;
-		for(int i=startSample;i<=stopSample;i++) {
-			if(data[i] > max)
-				max = data[i];
-			if(data[i] < min)
-				min = data[i];
-		}
-		double amplitude_uV = (max-min) * valueScaling;		
+		int[] minmax = new int[2];
+		signal.getIndex().getRange(startSample, stopSample, minmax);
+		double amplitude_uV = (minmax[1]-minmax[0]) * valueScaling;		
 		
 		//duration, difference, amplitude
-		DecimalFormat format = new DecimalFormat("##.####;-##.####");
 		if(plugin.getSelectedTool() == Tool.VERTICAL_MEASURE) {
-			plugin.getAnnotations().setMeasure("difference", definition.getName(), format.format(diff_uV/1000), "mV", false);
-			plugin.getAnnotations().setMeasure("duration", definition.getName(), format.format(time*1000), "ms", true);
-			plugin.getAnnotations().setMeasure("amplitude", definition.getName(), format.format(amplitude_uV/1000), "mV", false);			
+			plugin.getAnnotations().setMeasure("difference", definition.getName(), Annotations.MEASURE_FORMAT.format(diff_uV/1000), "mV", false);
+			plugin.getAnnotations().setMeasure("duration", definition.getName(), Annotations.MEASURE_FORMAT.format(time*1000), "ms", true);
+			plugin.getAnnotations().setMeasure("amplitude", definition.getName(), Annotations.MEASURE_FORMAT.format(amplitude_uV/1000), "mV", false);			
 		} else if(plugin.getSelectedTool() == Tool.HORIZONTAL_MEASURE) {
-			plugin.getAnnotations().setMeasure("difference", definition.getName(), format.format(diff_uV/1000), "mV", true);
+			plugin.getAnnotations().setMeasure("difference", definition.getName(), Annotations.MEASURE_FORMAT.format(diff_uV/1000), "mV", true);
 		}
 	}
 		
@@ -304,69 +310,162 @@ public class DrawingPanel extends JPanel {
 		// calculate the scaling which is dependent to the width		
 		this.scalingWidth =  (float) (getPreferredSize().getWidth() / this.sampleCount);			
 		
-		drawMeasureBackground(g2);
-		drawGrid(g2);
-		drawGraph(g2);
+		if(!clipLeadName) {
+			// printing, everything is drawn as vectors, without the caches of the screen:
+			// exports run outside of the event dispatch thread
+			drawStaticLayer(g2, false);
+			drawName(g2, clipLeadName);
+			drawMeasureBars(g2);
+			return;
+		}
+		
+		Rectangle visible = getVisibleRect();
+		if(visible.isEmpty())
+			return;
+		
+		updateStaticLayer(visible);
+		g2.drawImage(staticLayer, visible.x, visible.y, null);
 		drawName(g2, clipLeadName);
 		drawMeasureBars(g2);
+	}
+	
+	/**
+	 * Everything that doesn't follow the mouse
+	 * @param cached	true to use the grid tile and the last outline, only on the event dispatch thread
+	 */
+	private void drawStaticLayer(Graphics2D g2, boolean cached) {
+		drawMeasureBackground(g2);
+		drawGrid(g2, cached);
+		drawGraph(g2, cached);
 		drawBorder(g2);
-		drawAnnotations(g2);
+		drawFiducials(g2);
 	}
 	
-	private void drawGrid(Graphics2D g2) {
-		int pixelPerInch = Toolkit.getDefaultToolkit().getScreenResolution();
-		double pixelPerMm = pixelPerInch/25.4 * plugin.getZoom();
-		
-		BasicStroke thin = new BasicStroke(0.25f);
-		BasicStroke thick = new BasicStroke(0.5f);
-		g2.setColor(new Color(231, 84, 72, 200));		
+	/**
+	 * Drop the cached static layer, it is drawn again on the next repaint
+	 */
+	public void invalidateStaticLayer() {
+		this.staticLayerBounds = null;
+	}
+	
+	private void updateStaticLayer(Rectangle visible) {
+		Dimension size = getPreferredSize();
+		double height = plugin.getChannelHeightInMillivolt();
+		boolean sameGeometry = staticLayer != null && staticLayerBounds != null
+				&& size.equals(staticLayerSize) && height == staticLayerHeight;
+		if(sameGeometry && visible.equals(staticLayerBounds))
+			return;
 		
-		// draw horizontal lines
-		Dimension dim = getPreferredSize();
-		for(int i=0; i < dim.height/pixelPerMm; i++) {
-			g2.setStroke(i % 5 == 0 ? thick : thin);
-			g2.draw(new Line2D.Double(0, i*pixelPerMm, dim.getWidth(), i*pixelPerMm));
+		if(sameGeometry && visible.width == staticLayerBounds.width && visible.height == staticLayerBounds.height
+				&& visible.intersects(staticLayerBounds)) {
+			// scrolled: move what is still visible, and only draw the exposed strips
+			int dx = staticLayerBounds.x - visible.x;
+			int dy = staticLayerBounds.y - visible.y;
+			Graphics2D lg = staticLayer.createGraphics();
+			try {
+				lg.copyArea(0, 0, visible.width, visible.height, dx, dy);
+			} finally {
+				lg.dispose();
+			}
+			
+			if(dx != 0) {
+				int x = (dx > 0) ? visible.x : staticLayerBounds.x + staticLayerBounds.width;
+				renderStaticLayer(visible, new Rectangle(x, visible.y, Math.abs(dx), visible.height));
+			}
+			if(dy != 0) {
+				int y = (dy > 0) ? visible.y : staticLayerBounds.y + staticLayerBounds.height;
+				renderStaticLayer(visible, new Rectangle(visible.x, y, visible.width, Math.abs(dy)));
+			}
+		} else {
+			if(staticLayer == null || staticLayer.getWidth() != visible.width || staticLayer.getHeight() != visible.height) {
+				GraphicsConfiguration gc = getGraphicsConfiguration();
+				staticLayer = (gc != null) ? gc.createCompatibleImage(visible.width, visible.height, Transparency.OPAQUE)
+						: new BufferedImage(visible.width, visible.height, BufferedImage.TYPE_INT_RGB);
+			}
+			
+			renderStaticLayer(visible, visible);
 		}
 		
-		// draw vertical lines
-		for(int i=0; i < dim.width/pixelPerMm; i++) {
-			g2.setStroke(i % 5 == 0 ? thick : thin);
-			g2.draw(new Line2D.Double(i*pixelPerMm, 0, i*pixelPerMm, dim.getHeight()));
+		this.staticLayerBounds = visible;
+		this.staticLayerSize = size;
+		this.staticLayerHeight = height;
+	}
+	
+	/**
+	 * Draw a part of the static layer
+	 * @param visible	the area covered by the layer
+	 * @param area		the area to draw, in panel coordinates
+	 */
+	private void renderStaticLayer(Rectangle visible, Rectangle area) {
+		Graphics2D lg = staticLayer.createGraphics();
+		try {
+			lg.translate(-visible.x, -visible.y);
+			lg.clipRect(area.x, area.y, area.width, area.height);
+			lg.setColor(getBackground());
+			lg.fill(area);
+			
+			lg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);    
+			lg.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			lg.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+			drawStaticLayer(lg, true);
+		} finally {
+			lg.dispose();
 		}
 	}
 	
-	private void drawGraph(Graphics2D g2) {
-		// draw waveform as line using the given values
+	private void drawGrid(Graphics2D g2, boolean cached) {
+		int pixelPerInch = Toolkit.getDefaultToolkit().getScreenResolution();
+		double pixelPerMm = pixelPerInch/25.4 * plugin.getZoom();
+		
+		if(cached)
+			plugin.getGridPainter().paint(g2, getDrawingBounds(g2), pixelPerMm);
+		else
+			plugin.getGridPainter().print(g2, getDrawingBounds(g2), pixelPerMm);
+	}
+	
+	private void drawGraph(Graphics2D g2, boolean cached) {
+		// draw waveform as a single outline, decimated when zoomed out
+		// the outline is only rebuilt when the zoom, speed, amplitude, time length or filter changes
 		g2.setColor(Color.BLACK);
-		g2.setStroke(new BasicStroke(0.5f));
+		g2.setStroke(GRAPH_STROKE);
 		int height = getPreferredSize().height;
 		double mvHeight = height / plugin.getChannelHeightInMillivolt();
 
-		for(int i = 0; i < (this.sampleCount - 1); i++) {
-			int a = i;
-			int b = i + 1;
-			// draw a line between two points
-			// dim.height / 2 is our base line
-			Line2D line = new Line2D.Double(
-					this.scalingWidth * a, 
-					(height /2 - this.valueScaling * ( (float)(filter.get(a) / (float) 1000) * mvHeight) ), 
-					this.scalingWidth * b, 
-					(height /2 - this.valueScaling * ( (float)(filter.get(b) / (float) 1000) * mvHeight ) ));
-			g2.draw(line);
-		 }	
+		// only the samples under the clip, plus one on each side to join the borders
+		Rectangle bounds = getDrawingBounds(g2);
+		int from = (int)Math.floor(bounds.x / this.scalingWidth) - 1;
+		int to = (int)Math.ceil((bounds.x + bounds.width) / this.scalingWidth) + 1;
+		
+		// dim.height / 2 is our base line
+		double scale = this.valueScaling / 1000 * mvHeight;
+		if(cached)
+			g2.draw(renderer.getPath(this.sampleCount, this.scalingWidth, height /2, scale, from, to));
+		else
+			g2.draw(renderer.createPath(this.sampleCount, this.scalingWidth, height /2, scale, from, to));
+	}
+	
+	/**
+	 * @return the part of the panel which has to be painted
+	 */
+	private Rectangle getDrawingBounds(Graphics2D g2) {
+		Dimension dim = getPreferredSize();
+		Rectangle bounds = new Rectangle(0, 0, dim.width, dim.height);
+		Rectangle clip = g2.getClipBounds();
+		
+		return (clip == null) ? bounds : bounds.intersection(clip);
 	}
 	
 	private void drawMeasureBackground(Graphics2D g2) {
-		SampleMarker start = getMarker(Tool.VERTICAL_MEASURE, SampleMarker.Type.START);
-		SampleMarker stop = getMarker(Tool.VERTICAL_MEASURE, SampleMarker.Type.STOP);
-		if(start == null || stop == null)
+		int start = markers.getFirst(Tool.VERTICAL_MEASURE, MarkerType.START);
+		int stop = markers.getFirst(Tool.VERTICAL_MEASURE, MarkerType.STOP);
+		if(start < 0 || stop < 0)
 			return;
 		
 		Color background = new Color(230, 230, 230, 200);		
 		g2.setColor(background);
 		
-		double startX = this.scalingWidth * start.getSample();
-		double stopX = this.scalingWidth * stop.getSample();
+		double startX = this.scalingWidth * start;
+		double stopX = this.scalingWidth * stop;
 		if(startX > stopX) {
 			double tmp = stopX;
 			stopX = startX;
@@ -374,7 +473,8 @@ public class DrawingPanel extends JPanel {
 		}
 		
 		Rectangle2D rect = new Rectangle2D.Double(startX, 0, stopX-startX, getPreferredSize().height);
-		g2.fill(rect);
+		if(rect.intersects(getDrawingBounds(g2)))
+			g2.fill(rect);
 	}
 	
 	private void drawMeasureBars(Graphics2D g2) {
@@ -384,16 +484,30 @@ public class DrawingPanel extends JPanel {
 			drawHorizontalBar(g2, Color.CYAN, highlightedSample);
 		
 		
-		for(SampleMarker marker: markers) {
-			Color color = Color.BLUE;
-			if(marker.getType() == SampleMarker.Type.START)
-				color = Color.GREEN;
-			
-			if(marker.getTool() == Tool.HORIZONTAL_MEASURE)
-				drawHorizontalBar(g2, color, marker.getSample());
-			else
-				drawVerticalBar(g2, color, marker.getSample());
-		}		
+		// only the vertical bars under the clip, the horizontal ones cross the whole panel
+		Rectangle bounds = getDrawingBounds(g2);
+		int from = (int)Math.floor(bounds.x / this.scalingWidth) - 1;
+		int to = (int)Math.ceil((bounds.x + bounds.width) / this.scalingWidth) + 1;
+		for(Tool tool: Tool.values()) {
+			for(MarkerType type: MarkerType.values()) {
+				Color color = Color.BLUE;
+				if(type == MarkerType.START)
+					color = Color.GREEN;
+				
+				int count = markers.count(tool, type);
+				if(tool == Tool.HORIZONTAL_MEASURE) {
+					for(int i = 0; i < count; i++)
+						drawHorizontalBar(g2, color, markers.get(tool, type, i));
+				} else {
+					for(int i = markers.indexOf(tool, type, from); i < count; i++) {
+						int sample = markers.get(tool, type, i);
+						if(sample > to)
+							break;
+						drawVerticalBar(g2, color, sample);
+					}
+				}
+			}
+		}
 	}
 	
 	private void drawVerticalBar(Graphics2D g2, Color color, int sample) {
@@ -401,6 +515,9 @@ public class DrawingPanel extends JPanel {
 			return;
 		
 		double x = this.scalingWidth * sample; 
+		if(!isInClip(g2, x))
+			return;
+		
 		Line2D line = new Line2D.Double(x, 0, x, getPreferredSize().height);
 		
 		g2.setColor(color);
@@ -414,7 +531,7 @@ public class DrawingPanel extends JPanel {
 		
 		Dimension dim = getPreferredSize();
 		double mvHeight = dim.height / plugin.getChannelHeightInMillivolt();
-		double y = (dim.height /2 - this.valueScaling * ( (float)(filter.get(sample) / (float) 1000) * mvHeight)); 
+		double y = (dim.height /2 - this.valueScaling * ( (float)(signal.getFilter().get(sample) / (float) 1000) * mvHeight)); 
 		Line2D line = new Line2D.Double(0, y, dim.width, y);
 		
 		g2.setColor(color);
@@ -428,6 +545,9 @@ public class DrawingPanel extends JPanel {
 			return;
 		
 		double x = this.scalingWidth * sample; 
+		if(!isInClip(g2, x))
+			return;
+		
 		Dimension dim = getPreferredSize();
 		int h = dim.height/5;
 		Line2D line = new Line2D.Double(x, h, x, dim.height-h);
@@ -437,20 +557,25 @@ public class DrawingPanel extends JPanel {
 		g2.draw(line);
 	}
 	
-	private void drawAnnotations(Graphics2D g2) {
-		if(annotations == null)
+	private boolean isInClip(Graphics2D g2, double x) {
+		Rectangle clip = g2.getClipBounds();
+		return clip == null || (x >= clip.x - 1 && x <= clip.x + clip.width + 1);
+	}
+	
+	private void drawFiducials(Graphics2D g2) {
+		if(fiducials == null)
 			return;
 		
-		for(Annotation a: annotations) {			
-			if("ms".equals(a.unit)) {
-				int ms = Integer.valueOf(a.value);
-				int sample = (int)(ms * (double)plugin.getSamplesPerSecond()) / 1000;
-				drawHalfBar(g2, Color.BLUE, sample);
-			}	
-			else if("POINT".equals(a.unit)) {
-				int sample = Integer.valueOf(a.value);
-				drawHalfBar(g2, Color.BLUE, sample);
-			}
+		// only the points under the clip
+		Rectangle bounds = getDrawingBounds(g2);
+		int from = (int)Math.floor(bounds.x / this.scalingWidth) - 1;
+		int to = (int)Math.ceil((bounds.x + bounds.width) / this.scalingWidth) + 1;
+		int count = fiducials.count(fiducialChannel);
+		for(int i = fiducials.indexOf(fiducialChannel, from); i < count; i++) {
+			int sample = fiducials.getSample(fiducialChannel, i);
+			if(sample > to)
+				break;
+			drawHalfBar(g2, Color.BLUE, sample);
 		}
 	}
 	
@@ -464,16 +589,38 @@ public class DrawingPanel extends JPanel {
 		
 	private void drawName(Graphics2D g2, boolean clipLeadName) {	
 		g2.setColor(Color.black);			
-		g2.setFont(new Font("SanSerif", Font.BOLD, 11));	
+		g2.setFont(NAME_FONT);	
 		
 		int x = 5;
 		int y = 15;
 		
 		if(clipLeadName) {
-			x += g2.getClipBounds().x;
-			y += g2.getClipBounds().y;
+			// stick to the top left corner of the visible area, whatever is being repainted
+			Rectangle bounds = getNameBounds();
+			x = bounds.x;
+			y = bounds.y + g2.getFontMetrics().getAscent();
+			nameBounds = bounds;
 		}
 
 		g2.drawString(definition.getName(), x, y);		
 	}
+	
+	private Rectangle getNameBounds() {
+		Rectangle visible = getVisibleRect();
+		FontMetrics metrics = getFontMetrics(NAME_FONT);
+		
+		return new Rectangle(visible.x + 5, visible.y + 15 - metrics.getAscent(), 
+				metrics.stringWidth(definition.getName()), metrics.getHeight());
+	}
+	
+	/**
+	 * The visible area moved, erase the name where it was and draw it at its new place
+	 */
+	public void repaintName() {
+		if(nameBounds != null)
+			repaint(nameBounds.x - 1, nameBounds.y - 1, nameBounds.width + 2, nameBounds.height + 2);
+		
+		Rectangle bounds = getNameBounds();
+		repaint(bounds.x - 1, bounds.y - 1, bounds.width + 2, bounds.height + 2);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,173 @@
+package dicomux.waveform;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.dcm4che2.data.DicomElement;
+import org.dcm4che2.data.DicomObject;
+import org.dcm4che2.data.Tag;
+
+/**
+ * Fiducial points of the WaveformAnnotationSequence (QRS onset, QRS offset...), read once
+ * when the file is opened.<br/>
+ * For each channel, the sample positions are sorted with the code meaning of each point,
+ * so the points of the painted area are found by binary search.
+ */
+class FiducialIndex {
+	//only used while reading
+	private static class Point implements Comparable<Point> {
+		int sample;
+		String name;
+		
+		Point(int sample, String name) {
+			this.sample = sample;
+			this.name = name;
+		}
+		
+		public int compareTo(Point o) {
+			return sample < o.sample ? -1 : (sample == o.sample ? 0 : 1);
+		}
+	}
+
+	private int[][] samples; //[channel][point], sorted
+	private String[][] names; //[channel][point]
+
+	private FiducialIndex(int channelCount) {
+		this.samples = new int[channelCount][];
+		this.names = new String[channelCount][];
+	}
+
+	/**
+	 * @param dcm				the dicom object, holding the WaveformAnnotationSequence
+	 * @param channelCount		number of channels of the first multiplex group
+	 * @param samplesPerSecond	used for the points given as time offsets
+	 * @param kept				code meanings of the points to keep, lower case
+	 * @return the points of each channel
+	 */
+	public static FiducialIndex read(DicomObject dcm, int channelCount, int samplesPerSecond, List<String> kept) {
+		List<List<Point>> points = new ArrayList<List<Point>>(); //per channel
+		for(int c = 0; c < channelCount; c++)
+			points.add(new ArrayList<Point>());
+
+		DicomElement sequence = dcm.get(Tag.WaveformAnnotationSequence);
+		for(int i = 0; sequence != null && i < sequence.countItems(); i++) {
+			DicomObject item = sequence.getDicomObject(i);
+			String type = item.getString(Tag.TemporalRangeType);
+			if(!"POINT".equals(type) && !"MULTIPOINT".equals(type))
+				continue;
+
+			try {
+				String name = item.get(Tag.ConceptNameCodeSequence).getDicomObject(0).getString(Tag.CodeMeaning);
+				if(name == null || !kept.contains(name.toLowerCase()))
+					continue;
+
+				int[] positions = getPositions(item, samplesPerSecond);
+				if(positions == null)
+					continue;
+
+				boolean[] channels = getChannels(item, channelCount);
+				for(int c = 0; c < channelCount; c++)
+					if(channels[c])
+						for(int p: positions)
+							points.get(c).add(new Point(p, name));
+			} catch(Exception e) {
+				e.printStackTrace();
+				continue;
+			}
+		}
+
+		FiducialIndex index = new FiducialIndex(channelCount);
+		for(int c = 0; c < channelCount; c++) {
+			List<Point> sorted = points.get(c);
+			Collections.sort(sorted);
+
+			index.samples[c] = new int[sorted.size()];
+			index.names[c] = new String[sorted.size()];
+			for(int p = 0; p < sorted.size(); p++) {
+				index.samples[c][p] = sorted.get(p).sample;
+				index.names[c][p] = sorted.get(p).name;
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * @return the samples of the item, starting at 0, or null if there is none
+	 */
+	private static int[] getPositions(DicomObject item, int samplesPerSecond) {
+		//ReferencedSamplePositions starts at 1
+		int[] positions = item.getInts(Tag.ReferencedSamplePositions);
+		if(positions != null) {
+			int[] samples = new int[positions.length];
+			for(int i = 0; i < positions.length; i++)
+				samples[i] = positions[i] - 1;
+			return samples;
+		}
+
+		//ReferencedTimeOffsets is in seconds
+		double[] offsets = item.getDoubles(Tag.ReferencedTimeOffsets);
+		if(offsets != null) {
+			int[] samples = new int[offsets.length];
+			for(int i = 0; i < offsets.length; i++)
+				samples[i] = (int)Math.round(offsets[i] * samplesPerSecond);
+			return samples;
+		}
+
+		return null;
+	}
+
+	/**
+	 * ReferencedWaveformChannels holds pairs of multiplex group and channel numbers,
+	 * channel 0 means all the channels of the group. Only the first group is displayed.
+	 */
+	private static boolean[] getChannels(DicomObject item, int channelCount) {
+		boolean[] channels = new boolean[channelCount];
+		int[] references = item.getInts(Tag.ReferencedWaveformChannels);
+		if(references == null) {
+			Arrays.fill(channels, true);
+			return channels;
+		}
+
+		for(int i = 0; i + 1 < references.length; i += 2) {
+			if(references[i] > 1)
+				continue;
+
+			int channel = references[i+1];
+			if(channel == 0)
+				Arrays.fill(channels, true);
+			else if(channel <= channelCount)
+				channels[channel - 1] = true;
+		}
+
+		return channels;
+	}
+
+	public int count(int channel) {
+		return samples[channel].length;
+	}
+
+	/**
+	 * @return the index of the first point at or after this sample, count(channel) if there is none
+	 */
+	public int indexOf(int channel, int sample) {
+		int index = Arrays.binarySearch(samples[channel], sample);
+		if(index < 0)
+			return -index - 1;
+
+		//several points on the same sample, go to the first one
+		while(index > 0 && samples[channel][index - 1] == sample)
+			index--;
+		return index;
+	}
+
+	public int getSample(int channel, int index) {
+		return samples[channel][index];
+	}
+
+	public String getName(int channel, int index) {
+		return names[channel][index];
+	}
+}
@@ -0,0 +1,85 @@
+package dicomux.waveform;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import dicomux.waveform.filters.Filter;
+import dicomux.waveform.filters.LazyFilter;
+import dicomux.waveform.store.MinMaxIndex;
+
+/**
+ * Keeps the filtered channels, so that going back to a filter doesn't compute it again.<br/>
+ * The entries are identified by the channel, the filter specification and the sample rate. 
+ * When the memory used goes over the limit, the least recently used entries are dropped.
+ */
+class FilterCache {
+	/**
+	 * an initialized filter and the summary of its output
+	 */
+	public static class Entry {
+		private Filter filter;
+		private MinMaxIndex index;
+		private long bytes;
+		
+		public Entry(Filter filter, MinMaxIndex index, int sampleCount) {
+			this.filter = filter;
+			this.index = index;
+			// the output, and the summary which is about 1/64 of it
+			// a lazy filter only keeps some blocks
+			if(filter instanceof LazyFilter)
+				this.bytes = Math.min(LazyFilter.getMaxBytes(), 4L*sampleCount);
+			else
+				this.bytes = 4L*sampleCount + sampleCount/16;
+		}
+		
+		public Filter getFilter() {
+			return filter;
+		}
+		
+		public MinMaxIndex getIndex() {
+			return index;
+		}
+	}
+	
+	private long maxBytes;
+	private long bytes;
+	private LinkedHashMap<String, Entry> entries;
+	
+	/**
+	 * @param maxBytes memory the filtered channels may use
+	 */
+	public FilterCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		// access order: the first entry is the least recently used
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	}
+	
+	public static String getKey(int channel, String spec, int samplesPerSecond) {
+		return channel + "/" + spec + "/" + samplesPerSecond;
+	}
+	
+	public Entry get(String key) {
+		return entries.get(key);
+	}
+	
+	public void put(String key, Entry entry) {
+		Entry previous = entries.put(key, entry);
+		if(previous != null)
+			bytes -= previous.bytes;
+		bytes += entry.bytes;
+		
+		// the entry just added stays, even if it is bigger than the limit
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while(bytes > maxBytes && entries.size() > 1) {
+			Map.Entry<String, Entry> eldest = it.next();
+			bytes -= eldest.getValue().bytes;
+			it.remove();
+		}
+	}
+	
+	public void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+}
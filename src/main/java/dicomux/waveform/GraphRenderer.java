@@ -0,0 +1,148 @@
+package dicomux.waveform;
+
+import java.awt.geom.GeneralPath;
+
+import dicomux.waveform.filters.Filter;
+import dicomux.waveform.store.MinMaxIndex;
+
+/**
+ * Builds the outline of a channel.<br/>
+ * When several samples fall into the same pixel column, the column is reduced to its 
+ * first, minimum, maximum and last samples: the peaks are kept, and the cost depends 
+ * on the width of the panel instead of the number of samples.<br/>
+ * Only the samples of the painted area are drawn. The last outline is kept with a margin 
+ * around that area, repaints with the same geometry inside the margin reuse it as is. 
+ * A renderer is bound to one filter output, a new filter means a new renderer.<br/>
+ * getPath keeps state and is only called on the event dispatch thread, createPath 
+ * doesn't and may be called to print from another thread.
+ */
+class GraphRenderer {
+	//above this number of samples per pixel, the columns are decimated
+	private static final double DECIMATION_THRESHOLD = 2;
+
+	private Filter filter;
+	private MinMaxIndex index;
+	
+	//last outline and the geometry it was built for
+	private GeneralPath path;
+	private int pathSampleCount;
+	private double pathSampleWidth;
+	private double pathBaseline;
+	private double pathScale;
+	private int pathFrom;
+	private int pathTo;
+
+	/**
+	 * @param filter	the values to draw
+	 * @param index		min/max summary of the filter output, null if there is none (lazy filters)
+	 */
+	public GraphRenderer(Filter filter, MinMaxIndex index) {
+		this.filter = filter;
+		this.index = index;
+	}
+
+	/**
+	 * Same as createPath, but returns the previous outline if the geometry didn't change
+	 * and it covers the requested samples. A new outline covers the requested samples plus
+	 * as many on both sides, so that scrolling doesn't rebuild it on every step.
+	 */
+	public GeneralPath getPath(int sampleCount, double sampleWidth, double baseline, double scale, int from, int to) {
+		from = Math.max(0, from);
+		to = Math.min(sampleCount - 1, to);
+		if(path == null || sampleCount != pathSampleCount || sampleWidth != pathSampleWidth
+				|| baseline != pathBaseline || scale != pathScale || from < pathFrom || to > pathTo) {
+			int margin = to - from + 1;
+			pathFrom = Math.max(0, from - margin);
+			pathTo = to + margin;
+			path = createPath(sampleCount, sampleWidth, baseline, scale, pathFrom, pathTo);
+			pathSampleCount = sampleCount;
+			pathSampleWidth = sampleWidth;
+			pathBaseline = baseline;
+			pathScale = scale;
+		}
+		
+		return path;
+	}
+
+	/**
+	 * @param sampleCount	number of samples of the channel, starting at the first one
+	 * @param sampleWidth	width of a sample in pixels
+	 * @param baseline		y coordinate of the value 0
+	 * @param scale			pixels per sample unit, a positive value goes up
+	 * @param from			first sample to draw
+	 * @param to			last sample to draw, inclusive
+	 * @return the outline
+	 */
+	public GeneralPath createPath(int sampleCount, double sampleWidth, double baseline, double scale, int from, int to) {
+		if(index != null)
+			sampleCount = Math.min(sampleCount, index.size());
+		from = Math.max(0, from);
+		to = Math.min(sampleCount - 1, to);
+		int count = to - from + 1;
+		GeneralPath path = new GeneralPath(GeneralPath.WIND_NON_ZERO, 
+				Math.max(1, Math.min(count, (int)(count*sampleWidth)*4 + 4)));
+		if(count <= 0)
+			return path;
+
+		if(1 / sampleWidth < DECIMATION_THRESHOLD)
+			appendSamples(path, from, to, sampleWidth, baseline, scale);
+		else
+			appendColumns(path, sampleCount, from, to, sampleWidth, baseline, scale);
+
+		return path;
+	}
+
+	private void appendSamples(GeneralPath path, int from, int to, double sampleWidth, double baseline, double scale) {
+		path.moveTo((float)(sampleWidth * from), (float)(baseline - filter.get(from) * scale));
+		for(int i = from + 1; i <= to; i++)
+			path.lineTo((float)(sampleWidth * i), (float)(baseline - filter.get(i) * scale));
+	}
+
+	private void appendColumns(GeneralPath path, int sampleCount, int from, int to, 
+			double sampleWidth, double baseline, double scale) {
+		// start on the column boundary, the columns are the same whatever the range
+		int column = (int)(from * sampleWidth);
+		int first = (int)Math.ceil(column / sampleWidth);
+		boolean start = true;
+		int[] minmax = new int[2];
+		while(first <= to) {
+			int last = Math.min(sampleCount, (int)Math.ceil((column + 1) / sampleWidth)) - 1;
+			column++;
+			if(last < first)
+				continue;
+
+			float x = (float)(sampleWidth * first);
+			getRange(first, last, minmax);
+			if(start)
+				path.moveTo(x, (float)(baseline - filter.get(first) * scale));
+			else
+				path.lineTo(x, (float)(baseline - filter.get(first) * scale));
+			path.lineTo(x, (float)(baseline - minmax[0] * scale));
+			path.lineTo(x, (float)(baseline - minmax[1] * scale));
+			path.lineTo(x, (float)(baseline - filter.get(last) * scale));
+
+			first = last + 1;
+			start = false;
+		}
+	}
+	
+	private void getRange(int first, int last, int[] minmax) {
+		if(index != null) {
+			index.getRange(first, last, minmax);
+			return;
+		}
+		
+		// no summary, only the visible samples are read anyway
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for(int i = first; i <= last; i++) {
+			int v = filter.get(i);
+			if(v < min)
+				min = v;
+			if(v > max)
+				max = v;
+		}
+		minmax[0] = min;
+		minmax[1] = max;
+	}
+}
@@ -0,0 +1,90 @@
+package dicomux.waveform;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.TexturePaint;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Paints the 1mm / 5mm ecg grid.<br/>
+ * A 5mm tile is rendered once for a given resolution and used as a texture, 
+ * instead of drawing every line on every repaint. One painter is shared by all 
+ * the panels of a plug-in, the tile is only used on the event dispatch thread.
+ */
+class GridPainter {
+	private static final Color GRID_COLOR = new Color(231, 84, 72, 200);
+	private static final BasicStroke THIN = new BasicStroke(0.25f);
+	private static final BasicStroke THICK = new BasicStroke(0.5f);
+
+	private double pixelPerMm;
+	private TexturePaint texture;
+
+	/**
+	 * Drop the tile, the next paint will render a new one
+	 */
+	public void clear() {
+		this.texture = null;
+	}
+
+	/**
+	 * Fill an area with the grid, the grid is anchored at (0, 0)
+	 */
+	public void paint(Graphics2D g2, Rectangle area, double pixelPerMm) {
+		if(texture == null || pixelPerMm != this.pixelPerMm)
+			createTexture(pixelPerMm);
+
+		g2.setPaint(texture);
+		g2.fill(area);
+	}
+
+	/**
+	 * Draw every line of an area, without the tile: for printing, as vectors, 
+	 * from any thread
+	 */
+	public void print(Graphics2D g2, Rectangle area, double pixelPerMm) {
+		g2.setColor(GRID_COLOR);
+		
+		int first = (int)Math.floor(area.y / pixelPerMm);
+		for(int i = first; i*pixelPerMm <= area.y + area.height; i++) {
+			g2.setStroke(i % 5 == 0 ? THICK : THIN);
+			g2.draw(new Line2D.Double(area.x, i*pixelPerMm, area.x + area.width, i*pixelPerMm));
+		}
+		
+		first = (int)Math.floor(area.x / pixelPerMm);
+		for(int i = first; i*pixelPerMm <= area.x + area.width; i++) {
+			g2.setStroke(i % 5 == 0 ? THICK : THIN);
+			g2.draw(new Line2D.Double(i*pixelPerMm, area.y, i*pixelPerMm, area.y + area.height));
+		}
+	}
+
+	private void createTexture(double pixelPerMm) {
+		// the tile image has an integer size, the texture scales it back to exactly 5mm
+		double tileSize = 5*pixelPerMm;
+		int size = Math.max(1, (int)Math.ceil(tileSize));
+		double mm = size / 5.0;
+
+		BufferedImage tile = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2 = tile.createGraphics();
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);    
+		g2.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		g2.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+		g2.setColor(GRID_COLOR);
+
+		// lines are drawn on pixel centers so that the first one is not cut by the tile border
+		for(int i = 0; i < 5; i++) {
+			double pos = i*mm + 0.5;
+			g2.setStroke(i == 0 ? THICK : THIN);
+			g2.draw(new Line2D.Double(0, pos, size, pos));
+			g2.draw(new Line2D.Double(pos, 0, pos, size));
+		}
+		g2.dispose();
+
+		this.pixelPerMm = pixelPerMm;
+		this.texture = new TexturePaint(tile, new Rectangle2D.Double(0, 0, tileSize, tileSize));
+	}
+}
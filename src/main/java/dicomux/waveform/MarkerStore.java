@@ -0,0 +1,114 @@
+package dicomux.waveform;
+
+/**
+ * Markers of a panel, for each tool and type a sorted array of samples.<br/>
+ * The markers in a range are found by binary search, so painting only looks at the
+ * visible ones. Shifting the markers of a tool and type only moves their offset.
+ */
+class MarkerStore {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private static class Markers {
+		int[] samples = new int[INITIAL_CAPACITY]; //sorted, without the offset
+		int count;
+		int offset;
+	}
+
+	private Markers[][] markers; //[tool][type]
+
+	public MarkerStore() {
+		this.markers = new Markers[Tool.values().length][MarkerType.values().length];
+		clear();
+	}
+
+	public void clear() {
+		for(int t = 0; t < markers.length; t++)
+			for(int k = 0; k < markers[t].length; k++)
+				markers[t][k] = new Markers();
+	}
+
+	public void add(Tool tool, MarkerType type, int sample) {
+		Markers m = markers[tool.ordinal()][type.ordinal()];
+		if(m.count == m.samples.length) {
+			int[] grown = new int[m.count * 2];
+			System.arraycopy(m.samples, 0, grown, 0, m.count);
+			m.samples = grown;
+		}
+
+		int index = lowerBound(m, sample - m.offset);
+		System.arraycopy(m.samples, index, m.samples, index + 1, m.count - index);
+		m.samples[index] = sample - m.offset;
+		m.count++;
+	}
+
+	/**
+	 * Remove the markers of a tool
+	 * @param type	the type to remove, null for all the types
+	 * @return true if something has been removed
+	 */
+	public boolean remove(Tool tool, MarkerType type) {
+		boolean removed = false;
+		for(MarkerType t: MarkerType.values()) {
+			if(type == null || type == t) {
+				Markers m = markers[tool.ordinal()][t.ordinal()];
+				removed |= m.count > 0;
+				m.count = 0;
+				m.offset = 0;
+			}
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Move the markers of a tool
+	 * @param type	the type to move, null for all the types
+	 */
+	public void shift(Tool tool, MarkerType type, int howMuch) {
+		for(MarkerType t: MarkerType.values())
+			if(type == null || type == t)
+				markers[tool.ordinal()][t.ordinal()].offset += howMuch;
+	}
+
+	public int count(Tool tool, MarkerType type) {
+		return markers[tool.ordinal()][type.ordinal()].count;
+	}
+
+	/**
+	 * @param index	from 0 to count(tool, type) - 1, the markers are sorted by sample
+	 * @return the sample of a marker
+	 */
+	public int get(Tool tool, MarkerType type, int index) {
+		Markers m = markers[tool.ordinal()][type.ordinal()];
+		return m.samples[index] + m.offset;
+	}
+
+	/**
+	 * @return the sample of the first marker, or -1 if there is none
+	 */
+	public int getFirst(Tool tool, MarkerType type) {
+		return count(tool, type) == 0 ? -1 : get(tool, type, 0);
+	}
+
+	/**
+	 * @return the index of the first marker at or after this sample, count(tool, type) if there is none
+	 */
+	public int indexOf(Tool tool, MarkerType type, int sample) {
+		Markers m = markers[tool.ordinal()][type.ordinal()];
+		return lowerBound(m, sample - m.offset);
+	}
+
+	private static int lowerBound(Markers m, int value) {
+		int low = 0;
+		int high = m.count;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(m.samples[middle] < value)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+
+		return low;
+	}
+}
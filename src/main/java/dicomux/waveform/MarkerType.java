@@ -0,0 +1,10 @@
+package dicomux.waveform;
+
+/**
+ * Kind of a marker: the start or the stop of a measure, or any marker of the multiple markers tool
+ */
+public enum MarkerType {
+	START,
+	STOP,
+	ANY
+}
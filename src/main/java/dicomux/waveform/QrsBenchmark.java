@@ -0,0 +1,100 @@
+package dicomux.waveform;
+
+import java.util.Random;
+
+import dicomux.waveform.store.ArraySampleStore;
+
+/**
+ * Runs the QRS detector on a synthetic ECG whose beats are known: Gaussian P, Q, R, 
+ * S and T waves, RR intervals drawn between 0.6 and 1 s, an offset, baseline wander 
+ * and noise.<br/>
+ * Every beat must be found, nothing else, with an R peak at most TOLERANCE samples 
+ * away, before the timings are printed. With more noise, the largest sample moves 
+ * further around the top of the R wave.<br/>
+ * usage: QrsBenchmark [samples per second] [seconds of signal] [noise in uV] [runs] [offset in uV]
+ */
+public class QrsBenchmark {
+	//largest distance allowed between a detected R peak and the real one, in samples
+	private static final int TOLERANCE = 3;
+
+	/**
+	 * @param beats	receives the samples of the R peaks
+	 * @return the number of beats
+	 */
+	private static int createSignal(int[] signal, int samplesPerSecond, double noise, int offset, int[] beats) {
+		Random random = new Random(1);
+		for(int i=0;i<signal.length;i++) {
+			double wander = 200*Math.sin(2*Math.PI*0.3*i/samplesPerSecond);
+			signal[i] = offset + (int)(wander + noise*random.nextGaussian());
+		}
+		
+		int count = 0;
+		double t = 0.5;
+		while(t < (double)signal.length/samplesPerSecond - 0.5) {
+			int r = (int)(t*samplesPerSecond);
+			beats[count++] = r;
+			for(int i=Math.max(0, r - samplesPerSecond/2);i<Math.min(signal.length, r + samplesPerSecond/2);i++) {
+				double dt = (double)(i - r)/samplesPerSecond;
+				signal[i] += (int)(120*gauss(dt + 0.16, 0.025) + 1000*gauss(dt, 0.01) 
+						- 150*gauss(dt - 0.03, 0.008) + 300*gauss(dt - 0.25, 0.04));
+			}
+			t += 0.6 + 0.4*random.nextDouble();
+		}
+		
+		return count;
+	}
+	
+	private static double gauss(double x, double width) {
+		return Math.exp(-x*x/(2*width*width));
+	}
+
+	public static void main(String[] args) {
+		int samplesPerSecond = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+		int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : 24*3600;
+		double noise = (args.length > 2) ? Double.parseDouble(args[2]) : 20;
+		int runs = (args.length > 3) ? Integer.parseInt(args[3]) : 4;
+		int offset = (args.length > 4) ? Integer.parseInt(args[4]) : 1000;
+		
+		int[] signal = new int[seconds * samplesPerSecond];
+		int[] beats = new int[seconds * 2];
+		int count = createSignal(signal, samplesPerSecond, noise, offset, beats);
+		ArraySampleStore samples = new ArraySampleStore(signal);
+		
+		// both lists are sorted, a detected peak matches the real beat less than 50 ms away
+		int[] peaks = QrsDetector.detect(samples, samplesPerSecond);
+		int window = samplesPerSecond/20;
+		int found = 0;
+		int error = 0;
+		for(int b=0, p=0;b<count && p<peaks.length;) {
+			if(peaks[p] < beats[b] - window) {
+				p++;
+			} else if(peaks[p] > beats[b] + window) {
+				b++;
+			} else {
+				error = Math.max(error, Math.abs(peaks[p] - beats[b]));
+				found++;
+				b++;
+				p++;
+			}
+		}
+		System.out.println(count + " beats, " + peaks.length + " detected, " + found + " found, " 
+				+ "largest error: " + error + " samples");
+		if(found != count || peaks.length != count || error > TOLERANCE) {
+			System.out.println("the beats are not all found, no timing");
+			System.exit(1);
+		}
+		
+		// the first runs let the JIT compile the detector
+		long total = 0;
+		for(int run=0;run<runs;run++) {
+			long start = System.nanoTime();
+			QrsDetector.detect(samples, samplesPerSecond);
+			if(run >= runs/2)
+				total += System.nanoTime() - start;
+		}
+		
+		int measured = runs - runs/2;
+		System.out.println(signal.length + " samples, " + measured + " measured runs");
+		System.out.println("detection: " + total/measured/1000000 + " ms");
+	}
+}
@@ -0,0 +1,278 @@
+package dicomux.waveform;
+
+import dicomux.waveform.filters.Biquad;
+import dicomux.waveform.store.SampleStore;
+
+/**
+ * Streaming QRS detector, after Pan and Tompkins.<br/>
+ * The samples go once through a 5-15 Hz band pass, a derivative, a square and a 150 ms
+ * moving window integration. The peaks of the integration are compared to adaptive signal
+ * and noise levels, with a 200 ms refractory period, a slope test for the T waves and a
+ * search back when a beat seems to be missing. Each step costs a constant time per sample,
+ * only short ring buffers are kept, so a whole recording is processed in one linear pass.<br/>
+ * The R peak of a detected beat is the raw sample farthest from the mean of the complex.
+ */
+class QrsDetector {
+	private static final int BLOCK_SIZE = 4096;
+
+	private static final double REFRACTORY = 0.2;	//s
+	private static final double T_WAVE_WINDOW = 0.36;	//s
+	private static final double INTEGRATION = 0.15;	//s
+	private static final double LEARNING = 2;	//s
+	//the complex is searched that long before the peak of the integration
+	private static final double SEARCH = 0.25; //s
+
+	private Biquad highPass;
+	private Biquad lowPass;
+	private int refractory;
+	private int tWaveWindow;
+	private int learning;
+	private int integration;
+	private int search;
+
+	//derivative, last 4 band pass outputs
+	private double bp1, bp2, bp3, bp4;
+
+	//ring buffers indexed by sample % length, long enough to look back over the learning phase
+	private int[] raw;
+	private double[] slopes;
+	private double[] squares; //only the integration window
+	private double integral;
+
+	//peak detection on the integration
+	private int sample;	//index of the next sample
+	private double previous;
+	private double beforePrevious;
+	private double[] learned;	//integration during the learning phase
+	private double signalLevel;
+	private double noiseLevel;
+	private double threshold;
+
+	//beats
+	private int[] peaks;
+	private int peakCount;
+	private int lastBeat;	//peak of the integration of the last beat, or -1
+	private double lastSlope;
+	private double rrAverage;	//samples, 0 until there are two beats
+	private int missedIndex;	//best peak between threshold/2 and threshold since the last beat, or -1
+	private double missedLevel;
+	private double missedSlope;
+	private int missedPeak;
+
+	/**
+	 * @param samplesPerSecond	sampling frequency of the channel, above 30 Hz
+	 */
+	public QrsDetector(int samplesPerSecond) {
+		this.highPass = Biquad.highPass(samplesPerSecond, 5, Math.sqrt(0.5));
+		this.lowPass = Biquad.lowPass(samplesPerSecond, 15, Math.sqrt(0.5));
+		this.refractory = (int)(REFRACTORY * samplesPerSecond);
+		this.tWaveWindow = (int)(T_WAVE_WINDOW * samplesPerSecond);
+		this.learning = Math.max(1, (int)(LEARNING * samplesPerSecond));
+		this.integration = Math.max(1, (int)(INTEGRATION * samplesPerSecond));
+		this.search = Math.max(integration, (int)(SEARCH * samplesPerSecond));
+
+		this.raw = new int[learning + search];
+		this.slopes = new double[learning + search];
+		this.squares = new double[integration];
+		this.learned = new double[learning];
+
+		this.peaks = new int[64];
+		this.lastBeat = -1;
+		this.missedIndex = -1;
+	}
+
+	/**
+	 * Detect the beats of a whole channel
+	 * @return the samples of the R peaks, sorted
+	 */
+	public static int[] detect(SampleStore samples, int samplesPerSecond) {
+		QrsDetector detector = new QrsDetector(samplesPerSecond);
+		int[] block = new int[BLOCK_SIZE];
+		for(int from = 0; from < samples.size(); from += BLOCK_SIZE) {
+			int count = Math.min(BLOCK_SIZE, samples.size() - from);
+			samples.get(from, block, 0, count);
+			detector.process(block, 0, count);
+		}
+		detector.finish();
+
+		return detector.getPeaks();
+	}
+
+	/**
+	 * Feed the next samples of the channel
+	 */
+	public void process(int[] in, int off, int len) {
+		//the first sample isn't a step from 0, its ringing would look like a beat
+		if(sample == 0 && len > 0)
+			highPass.settle(lowPass.settle(in[off]));
+		
+		for(int i = off; i < off + len; i++) {
+			int x = in[i];
+			double bp = highPass.process(lowPass.process(x));
+			double slope = (2*bp + bp1 - bp3 - 2*bp4) / 8;
+			bp4 = bp3;
+			bp3 = bp2;
+			bp2 = bp1;
+			bp1 = bp;
+
+			//moving window integration, the sum is updated instead of recomputed
+			int slot = sample % integration;
+			integral += slope*slope - squares[slot];
+			squares[slot] = slope*slope;
+			slopes[sample % slopes.length] = Math.abs(slope);
+			raw[sample % raw.length] = x;
+			double level = Math.max(0, integral) / integration;
+
+			if(sample < learning) {
+				learned[sample] = level;
+				if(sample == learning - 1)
+					endLearning();
+			} else {
+				findPeak(level, sample);
+			}
+			sample++;
+		}
+	}
+
+	/**
+	 * No more samples, a recording shorter than the learning phase is looked at now
+	 */
+	public void finish() {
+		if(learned != null && sample > 0) {
+			double[] shorter = new double[sample];
+			System.arraycopy(learned, 0, shorter, 0, sample);
+			learned = shorter;
+			endLearning();
+		}
+	}
+
+	/**
+	 * The levels start from the first seconds, which are then looked at again
+	 */
+	private void endLearning() {
+		double max = 0;
+		double sum = 0;
+		for(double level: learned) {
+			max = Math.max(max, level);
+			sum += level;
+		}
+		signalLevel = max / 3;
+		noiseLevel = sum / learned.length / 2;
+		threshold = noiseLevel + 0.25*(signalLevel - noiseLevel);
+
+		for(int i = 0; i < learned.length; i++)
+			findPeak(learned[i], i);
+		learned = null;
+	}
+
+	/**
+	 * @param level	integration at this sample
+	 * @param index	the sample
+	 */
+	private void findPeak(double level, int index) {
+		//the previous sample is a peak if it is above both neighbours
+		double peak = previous;
+		boolean isPeak = previous > beforePrevious && previous >= level;
+		beforePrevious = previous;
+		previous = level;
+
+		if(isPeak && (lastBeat < 0 || index - 1 - lastBeat >= refractory))
+			classify(peak, index - 1);
+
+		//search back: no beat for too long, take the best peak above half the threshold
+		if(rrAverage > 0 && missedIndex >= 0 && index - lastBeat > 1.66*rrAverage) {
+			signalLevel = 0.25*missedLevel + 0.75*signalLevel;
+			threshold = noiseLevel + 0.25*(signalLevel - noiseLevel);
+			addBeat(missedIndex, missedPeak, missedSlope);
+		}
+	}
+
+	private void classify(double peak, int index) {
+		if(peak > threshold) {
+			double slope = getMaxSlope(index);
+			//a T wave has a lower slope than the beat before it
+			if(lastBeat >= 0 && index - lastBeat < tWaveWindow && slope < lastSlope / 2) {
+				noiseLevel = 0.125*peak + 0.875*noiseLevel;
+			} else {
+				signalLevel = 0.125*peak + 0.875*signalLevel;
+				addBeat(index, findR(index), slope);
+			}
+		} else {
+			noiseLevel = 0.125*peak + 0.875*noiseLevel;
+			if(peak > threshold / 2 && peak > missedLevel) {
+				missedIndex = index;
+				missedLevel = peak;
+				missedSlope = getMaxSlope(index);
+				//located now, the raw samples will be gone at the time of the search back
+				missedPeak = findR(index);
+			}
+		}
+		threshold = noiseLevel + 0.25*(signalLevel - noiseLevel);
+	}
+
+	/**
+	 * @param index	peak of the integration
+	 * @param peak	R peak of the complex
+	 */
+	private void addBeat(int index, int peak, double slope) {
+		if(lastBeat >= 0)
+			rrAverage = (rrAverage == 0) ? index - lastBeat : 0.125*(index - lastBeat) + 0.875*rrAverage;
+		lastBeat = index;
+		lastSlope = slope;
+		missedIndex = -1;
+		missedLevel = 0;
+
+		//the complex of a beat found by search back may overlap the previous one
+		if(peakCount > 0 && peak <= peaks[peakCount - 1])
+			return;
+
+		if(peakCount == peaks.length) {
+			int[] grown = new int[peakCount * 2];
+			System.arraycopy(peaks, 0, grown, 0, peakCount);
+			peaks = grown;
+		}
+		peaks[peakCount++] = peak;
+	}
+
+	/**
+	 * @return the biggest slope of the integration window ending at this sample
+	 */
+	private double getMaxSlope(int index) {
+		double max = 0;
+		for(int i = Math.max(0, index - integration + 1); i <= index; i++)
+			max = Math.max(max, slopes[i % slopes.length]);
+		return max;
+	}
+
+	/**
+	 * @return the raw sample farthest from the mean of the search window ending at this sample
+	 */
+	private int findR(int index) {
+		int first = Math.max(0, index - search + 1);
+		double mean = 0;
+		for(int i = first; i <= index; i++)
+			mean += raw[i % raw.length];
+		mean /= index - first + 1;
+
+		int best = first;
+		double distance = -1;
+		for(int i = first; i <= index; i++) {
+			double d = Math.abs(raw[i % raw.length] - mean);
+			if(d > distance) {
+				distance = d;
+				best = i;
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * @return the samples of the R peaks found so far
+	 */
+	public int[] getPeaks() {
+		int[] copy = new int[peakCount];
+		System.arraycopy(peaks, 0, copy, 0, peakCount);
+		return copy;
+	}
+}
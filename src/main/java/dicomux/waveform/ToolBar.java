@@ -13,6 +13,7 @@ import java.awt.print.Paper;
 import java.awt.print.PrinterException;
 import java.awt.print.PrinterJob;
 import java.io.File;
+import java.text.MessageFormat;
 
 import javax.print.attribute.HashPrintRequestAttributeSet;
 import javax.print.attribute.PrintRequestAttributeSet;
@@ -179,25 +180,45 @@ class ToolBar extends JToolBar {
 				return found;
 			}
 			
-			public void actionPerformed(ActionEvent e) {
-				Annotation a = findDuration();
-				if(a == null)
-					return;
+			private boolean hasDuration() {
+				for(Annotation a: plugin.getAnnotations().getMeasures())
+					if("duration".equals(a.name))
+						return true;
 				
-				if(e.getSource() == rrButton) {
-					this.rr = Double.valueOf(a.value);
-					int bpm = (int)(60000/rr);
-					plugin.getAnnotations().setManualAnnotation("*RR Interval", a.value, a.unit, true);
-					plugin.getAnnotations().setManualAnnotation("*RR Interval", String.valueOf(bpm), "bpm", true);
+				return false;
+			}
+			
+			private void setRR(String value, String unit) {
+				this.rr = Double.valueOf(value);
+				int bpm = (int)(60000/rr);
+				plugin.getAnnotations().setManualAnnotation("*RR Interval", value, unit, true);
+				plugin.getAnnotations().setManualAnnotation("*RR Interval", String.valueOf(bpm), "bpm", true);
+			}
+			
+			public void actionPerformed(ActionEvent e) {
+				double detectedRR = plugin.getDetectedRRInterval();
+				if(e.getSource() == rrButton && detectedRR > 0 && !hasDuration()) {
+					//nothing marked: the mean interval of the detected beats
+					setRR(String.valueOf(Math.round(detectedRR)), "ms");
+				} else {
+					Annotation a = findDuration();
+					if(a == null)
+						return;
+					
+					if(e.getSource() == rrButton) {
+						setRR(a.value, a.unit);
+					}
+					else if(e.getSource() == qtButton) {
+						this.qt = Double.valueOf(a.value);					
+						plugin.getAnnotations().setManualAnnotation("*QT Interval", a.value, a.unit, true);
+					}
 				}
-				else if(e.getSource() == qtButton) {
-					this.qt = Double.valueOf(a.value);					
-					plugin.getAnnotations().setManualAnnotation("*QT Interval", a.value, a.unit, true);
-				}			
 				
-				if(qt > 0 && rr > 0) {
-					int qtc = (int)(1000 * (qt/1000)/Math.sqrt(rr/1000));
-					plugin.getAnnotations().setManualAnnotation("*QTc Interval", String.valueOf(qtc), a.unit, true);
+				//the QT is corrected with the detected RR interval until one is marked
+				double correctionRR = (rr > 0) ? rr : detectedRR;
+				if(qt > 0 && correctionRR > 0) {
+					int qtc = (int)(1000 * (qt/1000)/Math.sqrt(correctionRR/1000));
+					plugin.getAnnotations().setManualAnnotation("*QTc Interval", String.valueOf(qtc), "ms", true);
 				}
 			}
 		};
@@ -469,11 +490,14 @@ class ToolBar extends JToolBar {
 		JLabel filterLabel = new JLabel(tr("wfFilter"));
 		this.add(filterLabel);
 
-		JComboBox filter = new JComboBox(new String[] {"Noop", "HighPass", "LowPass", "Combined", "Smooth", "Smoother"});
+		JComboBox filter = new JComboBox(new String[] {"Noop", "HighPass", "LowPass", "Combined", "Smooth", "Smoother", "Baseline", "Notch", "Notch50", "Notch60"});
 		filter.setRenderer(new BasicComboBoxRenderer() {
 			public Component getListCellRendererComponent(JList list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
 				Component c = super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
-				((BasicComboBoxRenderer)c).setText(Translation.tr("wfFilter" + value));
+				// the cutoff frequencies come from the settings
+				((BasicComboBoxRenderer)c).setText(MessageFormat.format(Translation.tr("wfFilter" + value), 
+						plugin.getSettings().get("dicomux.waveform.highPassFrequency"), 
+						plugin.getSettings().get("dicomux.waveform.lowPassFrequency")));
 				return c;
 			}
 		});
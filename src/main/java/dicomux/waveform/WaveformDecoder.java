@@ -0,0 +1,185 @@
+package dicomux.waveform;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import dicomux.DicomException;
+import dicomux.waveform.store.SampleStore;
+import dicomux.waveform.store.SampleStoreBuilder;
+
+/**
+ * Converts the interleaved WaveformData bytes into channel-major sample stores.
+ * The bytes are read in blocks through an ordered buffer view, so there is no
+ * per-sample byte shuffling, and the channel baseline is applied in the same pass.
+ */
+class WaveformDecoder {
+	//number of multiplexed frames (one sample of each channel) converted at once
+	private static final int BLOCK_FRAMES = 4096;
+
+	private int numberOfChannels;
+	private int numberOfSamples;
+	private int bitsAllocated;
+	private boolean signed;
+	private int[] expansion; //8 bit code to linear sample for the companded data, null otherwise
+
+	/**
+	 * @param numberOfChannels		NumberOfWaveformChannels
+	 * @param numberOfSamples		NumberOfWaveformSamples
+	 * @param bitsAllocated			WaveformBitsAllocated, 8, 16 or 32
+	 * @param sampleInterpretation	WaveformSampleInterpretation, signed when null, 
+	 * 								MB and AB (G.711 mu-law and A-law) are expanded to 16 bit linear samples
+	 * @throws DicomException if the sample format is not supported
+	 */
+	public WaveformDecoder(int numberOfChannels, int numberOfSamples, int bitsAllocated,
+			String sampleInterpretation) throws DicomException {
+		if(bitsAllocated != 8 && bitsAllocated != 16 && bitsAllocated != 32)
+			throw new DicomException("bitsAllocated is an unexpected value, value: " + bitsAllocated);
+
+		this.numberOfChannels = numberOfChannels;
+		this.numberOfSamples = numberOfSamples;
+		this.bitsAllocated = bitsAllocated;
+
+		String interpretation = (sampleInterpretation == null) ? null : sampleInterpretation.trim();
+		if("MB".equals(interpretation) || "AB".equals(interpretation)) {
+			if(bitsAllocated != 8)
+				throw new DicomException(interpretation + " samples with bitsAllocated " + bitsAllocated);
+			this.expansion = "MB".equals(interpretation) ? muLawTable() : aLawTable();
+			this.signed = true;
+		} else {
+			this.signed = isSigned(interpretation);
+		}
+	}
+
+	private static boolean isSigned(String interpretation) {
+		//no value: keep the historical behaviour, samples are signed
+		if(interpretation == null)
+			return true;
+
+		if("SB".equals(interpretation) || "SS".equals(interpretation) || "SL".equals(interpretation))
+			return true;
+		if("UB".equals(interpretation) || "US".equals(interpretation) || "UL".equals(interpretation))
+			return false;
+
+		//the waveform is still shown, but the values may be wrong
+		System.err.println("WARNING: unknown WaveformSampleInterpretation " + interpretation 
+				+ ", the samples are read as signed");
+		return true;
+	}
+
+	/**
+	 * G.711 mu-law expansion, the code is stored inverted
+	 */
+	private static int[] muLawTable() {
+		int[] table = new int[256];
+		for(int code = 0; code < 256; code++) {
+			int u = ~code & 0xff;
+			int t = (((u & 0x0f) << 3) + 0x84) << ((u & 0x70) >> 4);
+			table[code] = (u & 0x80) != 0 ? 0x84 - t : t - 0x84;
+		}
+		return table;
+	}
+
+	/**
+	 * G.711 A-law expansion, the even bits of the code are inverted
+	 */
+	private static int[] aLawTable() {
+		int[] table = new int[256];
+		for(int code = 0; code < 256; code++) {
+			int a = code ^ 0x55;
+			int segment = (a & 0x70) >> 4;
+			int t = ((a & 0x0f) << 4) + 8;
+			if(segment > 0)
+				t = (t + 0x100) << (segment - 1);
+			table[code] = (a & 0x80) != 0 ? t : -t;
+		}
+		return table;
+	}
+
+	/**
+	 * Number of frames actually present in the data, may be less than declared
+	 */
+	public int countFrames(int byteLength) {
+		int frames = byteLength / (bitsAllocated/8) / numberOfChannels;
+		if(frames > numberOfSamples) {
+			//XXX WARNING! What should we do when there is more data than declared ?
+			System.err.println("WARNING: " + frames + " samples in WaveformData, "
+					+ numberOfSamples + " declared");
+			frames = numberOfSamples;
+		}
+
+		return frames;
+	}
+
+	/**
+	 * Decode the samples
+	 * @param bytes			the content of WaveformData, in the byte order of the data
+	 * @param definitions	one definition per channel, used for the baseline
+	 * @param builder		receives the samples of each channel
+	 * @return the samples, one store per channel
+	 */
+	public SampleStore[] decode(ByteBuffer bytes, ChannelDefinition[] definitions, 
+			SampleStoreBuilder builder) throws IOException {
+		int frames = countFrames(bytes.remaining());
+		ByteBuffer bb = bytes.duplicate().order(bytes.order());
+		ShortBuffer shorts = bb.asShortBuffer();
+		IntBuffer ints = bb.asIntBuffer();
+
+		int[] interleaved = new int[BLOCK_FRAMES * numberOfChannels];
+		short[] raw16 = new short[bitsAllocated == 16 ? interleaved.length : 0];
+		byte[] raw8 = new byte[bitsAllocated == 8 ? interleaved.length : 0];
+		int[] channel = new int[BLOCK_FRAMES];
+		for(int first = 0; first < numberOfSamples; first += BLOCK_FRAMES) {
+			int count = Math.min(BLOCK_FRAMES, numberOfSamples - first);
+			int available = Math.max(0, Math.min(count, frames - first));
+
+			if(bitsAllocated == 8)
+				read8(bb, raw8, interleaved, available * numberOfChannels);
+			else if(bitsAllocated == 16)
+				read16(shorts, raw16, interleaved, available * numberOfChannels);
+			else
+				ints.get(interleaved, 0, available * numberOfChannels);
+
+			for(int c = 0; c < numberOfChannels; c++) {
+				double baseline = definitions[c].getBaseline();
+				int intBaseline = (int)baseline;
+				if(baseline == intBaseline) {
+					for(int s = 0, i = c; s < available; s++, i += numberOfChannels)
+						channel[s] = interleaved[i] + intBaseline;
+				} else {
+					//fractional baselines are rare, but must give the same result as before
+					for(int s = 0, i = c; s < available; s++, i += numberOfChannels)
+						channel[s] = (int)(interleaved[i] + baseline);
+				}
+
+				//missing samples stay on the baseline
+				Arrays.fill(channel, available, count, intBaseline);
+				builder.append(c, channel, 0, count);
+			}
+		}
+
+		return builder.build();
+	}
+
+	private void read8(ByteBuffer in, byte[] block, int[] dst, int length) {
+		in.get(block, 0, length);
+		if(expansion != null) {
+			for(int i = 0; i < length; i++)
+				dst[i] = expansion[block[i] & 0xff];
+			return;
+		}
+
+		int mask = signed ? -1 : 0xff;
+		for(int i = 0; i < length; i++)
+			dst[i] = block[i] & mask;
+	}
+
+	private void read16(ShortBuffer in, short[] block, int[] dst, int length) {
+		in.get(block, 0, length);
+		int mask = signed ? -1 : 0xffff;
+		for(int i = 0; i < length; i++)
+			dst[i] = block[i] & mask;
+	}
+}
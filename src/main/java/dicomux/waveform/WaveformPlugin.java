@@ -25,12 +25,18 @@ import java.awt.print.PrinterException;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
 
 import org.dcm4che2.data.DicomElement;
 import org.dcm4che2.data.DicomObject;
@@ -39,11 +45,19 @@ import org.dcm4che2.data.Tag;
 import dicomux.APlugin;
 import dicomux.DicomException;
 import dicomux.waveform.WaveformLayout.Format;
-import dicomux.waveform.filters.CombinedFilter;
-import dicomux.waveform.filters.HighPassFilter;
-import dicomux.waveform.filters.LowPassFilter;
+import dicomux.waveform.filters.AStreamFilter;
+import dicomux.waveform.filters.BaselineFilter;
+import dicomux.waveform.filters.ButterworthFilter;
+import dicomux.waveform.filters.Filter;
+import dicomux.waveform.filters.LazyFilter;
 import dicomux.waveform.filters.MovingAverageFilter;
 import dicomux.waveform.filters.NoopFilter;
+import dicomux.waveform.filters.NotchFilter;
+import dicomux.waveform.store.ArraySampleStore;
+import dicomux.waveform.store.MappedSampleStore;
+import dicomux.waveform.store.MinMaxIndex;
+import dicomux.waveform.store.SampleStore;
+import dicomux.waveform.store.SampleStoreBuilder;
 
 /**
  * This plug-in is for displaying waveform ecg data in a graphical way.
@@ -51,6 +65,8 @@ import dicomux.waveform.filters.NoopFilter;
  */
 public class WaveformPlugin extends APlugin implements Printable {	
 	public static double AUTO_ZOOM = Double.POSITIVE_INFINITY;
+	//fiducial points of the WaveformAnnotationSequence drawn on the leads, lower case code meanings
+	private static final List<String> FIDUCIALS = Arrays.asList("qrs onset", "qrs offset");
 	
 	private DicomObject dicomObject;
 	private double channelHeightInMillivolt;
@@ -63,12 +79,21 @@ public class WaveformPlugin extends APlugin implements Printable {
 	private double frequency;
 	private int numberOfSamples;		
 	private int samplesPerSecond;
-	private int data[][];
+	private ChannelSignal[] signals;
 	private ChannelDefinition[] channelDefinitions;
 	private Annotations annotations;
+	private FiducialIndex fiducials;
+	private int[] beats; //R peaks found by the QRS detector, null until it is done
 	
 	private double zoom = AUTO_ZOOM;
 	private WaveformLayout waveformLayout;
+	private GridPainter gridPainter = new GridPainter();
+	private FilterCache filterCache;
+	private volatile int filterGeneration; //read by the background tasks
+	private int reportedGeneration = -1;
+	
+	//the filters are run in the background, one task per channel
+	private static ExecutorService filterExecutor;
 	private Tool selectedTool;
 
 	public WaveformPlugin() throws Exception {
@@ -99,8 +124,8 @@ public class WaveformPlugin extends APlugin implements Printable {
 	}
 	
 	private void readData(DicomObject dcm) throws Exception {
-		// read waveform data which contains the samples
-		DicomElement waveformData = dcm.get(Tag.WaveformData);
+		// read waveform data which contains the samples, it may not have been loaded yet
+		ByteBuffer waveformData = getBulkBuffer(dcm, Tag.WaveformData);
 		if(waveformData == null)
 			throw new Exception("Could not read WaveformData");
 				
@@ -113,44 +138,23 @@ public class WaveformPlugin extends APlugin implements Printable {
 		// write the sample data into a 2-dimensional array
 		// first dimension: channel
 		// second dimension: samples
-		
-		this.data = new int[numberOfChannels][numberOfSamples];		
-		if(bitsAllocated.getInt(true) == 16) {
-			
-			boolean order = dcm.bigEndian();
-			byte[] tmp_bytes = waveformData.getBytes();
-			short[] tmp = toShort(tmp_bytes, order);
-			
-			if(tmp.length/numberOfChannels > numberOfSamples) {
-				//XXX WARNING! What should we do when there is more data than declared ?
-				//this.numberOfSamples = tmp.length/numberOfChannels;
-				//this.seconds = numberOfSamples / frequency;
-				//this.samplesPerSecond = (int)(numberOfSamples / seconds);
-				//this.data = new int[numberOfChannels][numberOfSamples];
-				System.err.println("WARNING: " + numberOfSamples + " samples, "
-						+ seconds + " seconds, " +  samplesPerSecond + "sample/sec");
-			}
-			
-			for (int i=0; i<tmp.length && i<numberOfChannels*numberOfSamples; i++) {
-				data[i%numberOfChannels][i/numberOfChannels] = (int) tmp[i];
-			}
-		}
-		else if(bitsAllocated.getInt(true) == 8)
-		{
-			byte[] tmp = waveformData.getBytes();
-			for (int i = 0; i < tmp.length; i++ ) {
-				data[i%numberOfChannels][i/numberOfChannels] = (int) tmp[i];
-			}
-		}
+		WaveformDecoder decoder = new WaveformDecoder(numberOfChannels, numberOfSamples,
+				bitsAllocated.getInt(true), dcm.getString(Tag.WaveformSampleInterpretation));
+		
+		// long recordings (holter) don't fit in the heap, spill them to a mapped file
+		SampleStoreBuilder builder;
+		long total = (long)numberOfChannels * numberOfSamples;
+		if(total > getSettings().getInt("dicomux.waveform.mappedSamplesThreshold"))
+			builder = new MappedSampleStore.Builder(numberOfChannels, numberOfSamples);
 		else
-			throw new Exception("bitsAllocated is an unexpected value, value: " + bitsAllocated.getInt(true));
+			builder = new ArraySampleStore.Builder(numberOfChannels, numberOfSamples);
 		
-		//apply baseline
-		for(int i=0;i<data.length;i++) {
-			ChannelDefinition def = channelDefinitions[i];
-			for(int j=0;j<data[i].length;j++)
-				data[i][j] += def.getBaseline();
-		}
+		SampleStore[] samples = decoder.decode(waveformData, channelDefinitions, builder);
+		
+		// one signal per channel, whatever the number of panels showing it
+		this.signals = new ChannelSignal[numberOfChannels];
+		for(int i = 0; i < numberOfChannels; i++)
+			signals[i] = new ChannelSignal(channelDefinitions[i], samples[i]);
 	}
 	
 	public void setData(DicomObject dcm) throws Exception {
@@ -193,7 +197,7 @@ public class WaveformPlugin extends APlugin implements Printable {
 		readData(dcm);
 				
 		//get channel height
-		this.channelHeightInMillivolt = computeChannelHeight(data, channelDefinitions);
+		this.channelHeightInMillivolt = computeChannelHeight(signals);
 		
 		
 		// in most cases we have to many channels so we use a scrollpane
@@ -225,9 +229,12 @@ public class WaveformPlugin extends APlugin implements Printable {
 		
 		this.scroll.setViewportView(channelwrap); 
 		
+		// scrolling copies what is already on screen, only the exposed area and the lead names are painted
+		this.scroll.getViewport().setScrollMode(JViewport.BLIT_SCROLL_MODE);
 		AdjustmentListener adjustmentListener = new AdjustmentListener() {			
 			public void adjustmentValueChanged(AdjustmentEvent e) {
-				channelwrap.repaint();
+				for(Component c: channelpane.getComponents())
+					((DrawingPanel)c).repaintName();
 			}
 		};
 		
@@ -235,8 +242,11 @@ public class WaveformPlugin extends APlugin implements Printable {
 		this.scroll.getVerticalScrollBar().addAdjustmentListener(adjustmentListener);
 		
 		this.annotations = new Annotations(dicomObject);
+		this.fiducials = FiducialIndex.read(dicomObject, numberOfChannels, samplesPerSecond, FIDUCIALS);
 		this.tools = new ToolBar(this);		
 		addDrawingPanels();
+		if(getSettings().getBoolean("dicomux.waveform.detectBeats"))
+			detectBeats();
 		
 		Format format = numberOfChannels == 12 ? Format.TWOPARTS : Format.DEFAULT;
 		setDisplayFormat(format);
@@ -276,63 +286,16 @@ public class WaveformPlugin extends APlugin implements Printable {
 		}
 	}
 	
-	/**
-	 * Convert an byte array to a short array
-	 * 
-	 * @param data				the array to convert
-	 * @param isBigEndian		tell the convertion the byte order of the data 
-	 *                          true if the bytes are in big endian order
-	 *                          false if the bytes are in little endian order
-	 * @return
-	 */
-	private short[] toShort(byte[] data, boolean isBigEndian) {
-		
-		short[] retdata = new short[data.length / 2];
-		int pos = 0;
-		ByteBuffer bb = ByteBuffer.allocate(2);
-		if(isBigEndian)
-		{
-			bb.order(ByteOrder.BIG_ENDIAN);
-		}
-		else
-		{
-			bb.order(ByteOrder.LITTLE_ENDIAN);
-		}
-		
-		for (int i = 0; i < data.length; ++i) {
-			byte firstByte = data[i];
-			byte secondByte = data[++i];
-			
-			bb.put(firstByte);
-			bb.put(secondByte);
-			retdata[pos] = bb.getShort(0);
-			pos++;
-			bb.clear();
-		}
-		
-		return retdata;
-	}
-	
 	private void addDrawingPanels() {
 		for (int i = 0; i < this.channelDefinitions.length; i++) {
-			DrawingPanel panel = new DrawingPanel(this, data[i], channelDefinitions[i]);
+			DrawingPanel panel = new DrawingPanel(this, signals[i]);
 			channelpane.add(channelDefinitions[i].getName(), panel);		
-			
-			/*
-			//XXX Annotations a controller par une combobox / des boutons
-			List<Annotation> panelAnnotations = new ArrayList<Annotation>();
-			for(Annotation a: annotations.getAnnotations()) {
-				if(String.valueOf(i+1).equals(a.channel)) {
-					if("QRS Onset".equals(a.name) || "QRS Offset".equals(a.name))
-						panelAnnotations.add(a);
-				}
-			}
-			panel.setAnnotations(panelAnnotations);
-			*/
+			panel.setFiducials(fiducials, i);
 			
 			if(channelDefinitions[i].getName().equalsIgnoreCase("Lead II")) {
-				DrawingPanel rhythm = new DrawingPanel(this, data[i], channelDefinitions[i]);
+				DrawingPanel rhythm = new DrawingPanel(this, signals[i]);
 				rhythm.setRhythm(true);
+				rhythm.setFiducials(fiducials, i);
 				channelpane.add("rythm", rhythm);
 			}
 		}
@@ -376,23 +339,17 @@ public class WaveformPlugin extends APlugin implements Printable {
 		this.channelpane.revalidate();
 	}
 	
-	private double computeChannelHeight(int data[][], ChannelDefinition definitions[]) {						
-			for(int i = 0; i < data.length; i++) {
-				double min = 0;
-				double max = 0;
+	private double computeChannelHeight(ChannelSignal signals[]) {						
+			ChannelDefinition definitions[] = new ChannelDefinition[signals.length];
+			for(int i = 0; i < signals.length; i++) {
+				//the summary gives the extremes of the whole channel without scanning it
+				int minValue = Math.min(0, signals[i].getIndex().getMinimum());
+				int maxValue = Math.max(0, signals[i].getIndex().getMaximum());
+				
+				definitions[i] = signals[i].getDefinition();
 				double scalingValue = definitions[i].getScaling();
-				for(int j = 0; j < data[i].length; j++) {
-					if(min > data[i][j] * scalingValue)
-					{
-						min = data[i][j] * scalingValue;
-					}
-					if(max < data[i][j] * scalingValue)
-					{
-						max = data[i][j] * scalingValue;
-					}
-				}
-				definitions[i].setMaximum_uV(max);
-				definitions[i].setMinimum_uV(min);
+				definitions[i].setMaximum_uV(Math.max(minValue * scalingValue, maxValue * scalingValue));
+				definitions[i].setMinimum_uV(Math.min(minValue * scalingValue, maxValue * scalingValue));
 			}
 			
 			double max = Double.MIN_VALUE;
@@ -424,27 +381,235 @@ public class WaveformPlugin extends APlugin implements Printable {
 	//--
 	
 	public void setFilter(String name) {		 
-		for(Component c: channelpane.getComponents()) {
-			if("Noop".equals(name)) {
-				((DrawingPanel)c).setFilter(new NoopFilter());
-			} else if("HighPass".equals(name)) {
-				((DrawingPanel)c).setFilter(new HighPassFilter(samplesPerSecond, 0.05));
-			} else if("LowPass".equals(name)) {
-				((DrawingPanel)c).setFilter(new LowPassFilter(samplesPerSecond, 40));
-			} else if("Combined".equals(name)) {
-				((DrawingPanel)c).setFilter(new CombinedFilter(
-						new HighPassFilter(samplesPerSecond, 0.05),
-						new LowPassFilter(samplesPerSecond, 40)));
-			} else if("Smooth".equals(name)) {
-				((DrawingPanel)c).setFilter(new MovingAverageFilter(samplesPerSecond/100));
-			} else if("Smoother".equals(name)) {
-				((DrawingPanel)c).setFilter(new MovingAverageFilter(samplesPerSecond/40));
+		// size of the cache in MB
+		if(filterCache == null)
+			filterCache = new FilterCache(getSettings().getInt("dicomux.waveform.filterCacheSize") * 1024L * 1024L);
+		
+		// an unknown name changes nothing, rather than only some of the channels
+		if(signals.length == 0 || createFilter(name, signals[0]) == null)
+			return;
+		
+		// results of a filter selected before this one are dropped
+		final int generation = ++filterGeneration;
+		
+		// filter each channel once, the rhythm strip shares the signal of its lead
+		String spec = getFilterSpec(name);
+		for(int i = 0; i < signals.length; i++) {
+			final ChannelSignal signal = signals[i];
+			final String key = FilterCache.getKey(i, spec, samplesPerSecond);
+			FilterCache.Entry cached = filterCache.get(key);
+			if(cached != null) {
+				signal.setFilter(cached.getFilter(), cached.getIndex());
+				continue;
+			}
+			
+			Filter created = createFilter(name, signal);
+			
+			// long recordings are only filtered where they are looked at
+			if(created instanceof AStreamFilter && signal.getSamples().size() > getSettings().getInt("dicomux.waveform.lazyFilterThreshold"))
+				created = new LazyFilter((AStreamFilter)created);
+			final Filter filter = created;
+			
+			if(filter instanceof NoopFilter) {
+				signal.setFilter(filter);
+				continue;
 			}
+			
+			// the panels keep showing the previous output until this one is ready
+			getFilterExecutor().execute(new Runnable() {
+				public void run() {
+					// another filter has been selected while this task was waiting
+					if(generation != filterGeneration)
+						return;
+					
+					try {
+						final MinMaxIndex index = signal.runFilter(filter);
+						SwingUtilities.invokeLater(new Runnable() {
+							public void run() {
+								publishFilter(generation, signal, key, filter, index);
+							}
+						});
+					} catch(final Throwable t) {
+						// an error, out of memory for instance, must not be lost in the pool
+						t.printStackTrace();
+						SwingUtilities.invokeLater(new Runnable() {
+							public void run() {
+								reportFilterFailure(generation, t);
+							}
+						});
+					}
+				}
+			});
 		}
 		
+		for(Component c: channelpane.getComponents())
+			((DrawingPanel)c).filterChanged();
+		
 		this.channelpane.revalidate();
 	}
 	
+	/**
+	 * A filter has been computed for a channel, show it if it is still the selected one.
+	 * Always called in the event dispatch thread.
+	 */
+	private void publishFilter(int generation, ChannelSignal signal, String key, Filter filter, MinMaxIndex index) {
+		filterCache.put(key, new FilterCache.Entry(filter, index, signal.getSamples().size()));
+		if(generation != filterGeneration)
+			return;
+		
+		signal.setFilter(filter, index);
+		for(Component c: channelpane.getComponents()) {
+			DrawingPanel panel = (DrawingPanel)c;
+			if(panel.getSignal() == signal) {
+				panel.filterChanged();
+			}
+		}
+	}
+	
+	/**
+	 * A filter could not be computed, tell it once per selected filter if it is still the selected one.
+	 * Always called in the event dispatch thread.
+	 */
+	private void reportFilterFailure(int generation, Throwable t) {
+		if(generation != filterGeneration || generation == reportedGeneration)
+			return;
+		
+		reportedGeneration = generation;
+		JOptionPane.showMessageDialog(getContent(), 
+				"Error while filtering:\n" + t.toString(), 
+				"Dicomux", JOptionPane.ERROR_MESSAGE);
+	}
+	
+	/**
+	 * Find the beats of the rhythm lead (Lead II, or the first channel) in the background, 
+	 * the RR interval and heart rate are added to the measures when it is done
+	 */
+	private void detectBeats() {
+		int channel = 0;
+		for(int i = 0; i < channelDefinitions.length; i++)
+			if(channelDefinitions[i].getName().equalsIgnoreCase("Lead II"))
+				channel = i;
+		
+		final SampleStore samples = signals[channel].getSamples();
+		final int rate = samplesPerSecond;
+		getFilterExecutor().execute(new Runnable() {
+			public void run() {
+				try {
+					final int[] peaks = QrsDetector.detect(samples, rate);
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							publishBeats(peaks);
+						}
+					});
+				} catch(Throwable t) {
+					// the measures are simply not shown, the waveform is still usable
+					t.printStackTrace();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Always called in the event dispatch thread
+	 */
+	private void publishBeats(int[] peaks) {
+		this.beats = peaks;
+		double rr = getDetectedRRInterval();
+		if(rr < 0)
+			return;
+		
+		annotations.setMeasure("beats", "-", String.valueOf(peaks.length), "", false);
+		annotations.setMeasure("rr interval", "-", String.valueOf(Math.round(rr)), "ms", false);
+		annotations.setMeasure("heart rate", "-", String.valueOf(Math.round(60000 / rr)), "bpm", true);
+	}
+	
+	/**
+	 * @return the mean RR interval of the beats found on the rhythm lead in ms, 
+	 * or -1 if they are not known yet or if there are less than two
+	 */
+	public double getDetectedRRInterval() {
+		if(beats == null || beats.length < 2)
+			return -1;
+		
+		return (beats[beats.length - 1] - beats[0]) * 1000.0 / samplesPerSecond / (beats.length - 1);
+	}
+	
+	/**
+	 * The spill files of the samples are deleted, the background results still to come are dropped
+	 */
+	public void close() {
+		filterGeneration++;
+		if(signals == null)
+			return;
+		
+		for(ChannelSignal signal: signals)
+			if(signal.getSamples() instanceof MappedSampleStore)
+				((MappedSampleStore)signal.getSamples()).close();
+	}
+	
+	private static synchronized ExecutorService getFilterExecutor() {
+		if(filterExecutor == null) {
+			// one thread per processor, they don't keep the application running
+			filterExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "dicomux-filter");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.NORM_PRIORITY - 1);
+					return thread;
+				}
+			});
+		}
+		
+		return filterExecutor;
+	}
+	
+	/**
+	 * @return the name of the filter and the settings it is built with
+	 */
+	private String getFilterSpec(String name) {
+		return name 
+			+ "," + getSettings().get("dicomux.waveform.filterOrder")
+			+ "," + getSettings().get("dicomux.waveform.highPassFrequency")
+			+ "," + getSettings().get("dicomux.waveform.lowPassFrequency")
+			+ "," + getSettings().get("dicomux.waveform.notchFrequency")
+			+ "," + getSettings().get("dicomux.waveform.notchHarmonics");
+	}
+	
+	private Filter createFilter(String name, ChannelSignal signal) {
+		int order = getSettings().getInt("dicomux.waveform.filterOrder");
+		double highPass = getSettings().getDouble("dicomux.waveform.highPassFrequency");
+		double lowPass = getSettings().getDouble("dicomux.waveform.lowPassFrequency");
+		
+		if("Noop".equals(name)) {
+			return new NoopFilter();
+		} else if("HighPass".equals(name)) {
+			return ButterworthFilter.highPass(order, samplesPerSecond, highPass);
+		} else if("LowPass".equals(name)) {
+			return ButterworthFilter.lowPass(order, samplesPerSecond, lowPass);
+		} else if("Combined".equals(name)) {
+			return ButterworthFilter.bandPass(order, samplesPerSecond, highPass, lowPass);
+		} else if("Smooth".equals(name)) {
+			return new MovingAverageFilter(samplesPerSecond/100);
+		} else if("Smoother".equals(name)) {
+			return new MovingAverageFilter(samplesPerSecond/40);
+		} else if("Baseline".equals(name)) {
+			return new BaselineFilter(samplesPerSecond);
+		} else if(name.startsWith("Notch")) {
+			// the frequency declared by the acquisition, unless one is chosen
+			double frequency = signal.getDefinition().getNotchFrequency();
+			if("Notch50".equals(name))
+				frequency = 50;
+			else if("Notch60".equals(name))
+				frequency = 60;
+			else if(frequency <= 0)
+				frequency = getSettings().getDouble("dicomux.waveform.notchFrequency");
+			
+			return new NotchFilter(samplesPerSecond, frequency, getSettings().getInt("dicomux.waveform.notchHarmonics"));
+		}
+		
+		return null;
+	}
+	
 	public void setSpeed(float mmPerSecond) {
 		this.waveformLayout.setSpeed(mmPerSecond);
 		this.channelpane.revalidate();
@@ -480,6 +645,7 @@ public class WaveformPlugin extends APlugin implements Printable {
 	
 	public void setZoom(double zoom) {
 		this.zoom = Math.max(zoom, 0.3);
+		this.gridPainter.clear();
 		channelpane.revalidate();
 	}
 	
@@ -580,7 +746,13 @@ public class WaveformPlugin extends APlugin implements Printable {
 	public BufferedImage createImage() {
 		BufferedImage b = new BufferedImage(channelpane.getWidth(), channelpane.getHeight(), 
 				BufferedImage.TYPE_INT_ARGB);
-		channelpane.paint(b.createGraphics());
+		// printed: the whole panels, as vectors, not the on-screen image of their visible part
+		Graphics2D g2 = b.createGraphics();
+		try {
+			channelpane.printAll(g2);
+		} finally {
+			g2.dispose();
+		}
 		return b;
 	}
 	
@@ -613,6 +785,10 @@ public class WaveformPlugin extends APlugin implements Printable {
 	public Annotations getAnnotations() {
 		return annotations;
 	}
+	
+	GridPainter getGridPainter() {
+		return gridPainter;
+	}
 
 	public Tool getSelectedTool() {
 		return selectedTool;
@@ -0,0 +1,64 @@
+package dicomux.waveform.filters;
+
+import java.util.Arrays;
+
+import dicomux.waveform.store.SampleStore;
+
+/**
+ * Gives random access to the output of a stream filter.<br/>
+ * init runs the stream over the whole signal block by block, and removes the delay.
+ * compute does the same for a part of the signal only, starting early enough for the 
+ * filter to settle. The same instance shouldn't be used as a stream at the same time.
+ */
+public abstract class AStreamFilter implements Filter, StreamFilter {
+	private static final int BLOCK_SIZE = 4096;
+	
+	//the output, filters with their own way of filling it can override init
+	protected int[] data;
+	
+	public void init(SampleStore values) {
+		int size = values.size();
+		this.data = new int[size];
+		if(size == 0)
+			return;
+		
+		compute(values, 0, size, data);
+	}
+	
+	public int get(int index) {
+		return data[index];
+	}
+	
+	/**
+	 * Filter a part of the signal
+	 * @param values	the whole signal
+	 * @param from		first sample of the part
+	 * @param to		end of the part, exclusive
+	 * @param out		receives the output of the part, from its first element
+	 */
+	public void compute(SampleStore values, int from, int to, int[] out) {
+		int size = values.size();
+		int delay = getDelay();
+		int start = Math.max(0, from - getSettlingTime());
+		int end = to + delay;
+		int last = values.get(size - 1);
+		
+		reset();
+		int[] block = new int[BLOCK_SIZE];
+		for(int first = start; first < end; first += BLOCK_SIZE) {
+			int len = Math.min(BLOCK_SIZE, end - first);
+			int available = Math.max(0, Math.min(len, size - first));
+			values.get(first, block, 0, available);
+			
+			// past the end, the last sample is repeated to flush the delayed outputs
+			Arrays.fill(block, available, len, last);
+			process(block, 0, len, block);
+			
+			// output i is input i - delay
+			int outFrom = Math.max(first, from + delay);
+			int outTo = Math.min(first + len, to + delay);
+			if(outFrom < outTo)
+				System.arraycopy(block, outFrom - first, out, outFrom - delay - from, outTo - outFrom);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package dicomux.waveform.filters;
+
+/**
+ * Removes the baseline wander.<br/>
+ * The baseline is estimated with a 200ms median, which removes the QRS complexes, 
+ * followed by a 600ms median, which removes the P and T waves. It is then subtracted 
+ * from the signal, delayed by the same number of samples.
+ */
+public class BaselineFilter extends AStreamFilter {
+	private CombinedFilter baseline;
+	
+	//state carried between blocks: the input, waiting for its baseline
+	private int[] delayed;
+	private int seen;
+	private int[] block;
+
+	public BaselineFilter(int samplesPerSecond) {
+		this.baseline = new CombinedFilter(
+				new MedianFilter(samplesPerSecond/5), 
+				new MedianFilter(samplesPerSecond*3/5));
+		this.delayed = new int[baseline.getDelay() + 1];
+		this.block = new int[0];
+	}
+
+	public void reset() {
+		baseline.reset();
+		this.seen = 0;
+	}
+
+	public int getDelay() {
+		return baseline.getDelay();
+	}
+
+	public int getSettlingTime() {
+		return baseline.getSettlingTime();
+	}
+
+	public void process(int[] in, int off, int len, int[] out) {
+		if(block.length < off + len)
+			block = new int[off + len];
+		baseline.process(in, off, len, block);
+		
+		for(int i=0;i<len;i++) {
+			int slot = seen % delayed.length;
+			delayed[slot] = in[off + i];
+			seen++;
+			
+			// the oldest sample kept is the one the baseline was computed for
+			int value = (seen < delayed.length) ? delayed[0] : delayed[seen % delayed.length];
+			out[off + i] = value - block[off + i];
+		}
+	}
+}
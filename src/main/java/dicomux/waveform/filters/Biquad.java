@@ -0,0 +1,125 @@
+package dicomux.waveform.filters;
+
+/**
+ * Second order IIR section, in transposed direct form II.<br/>
+ * The coefficients are computed once for a sample rate, the state is kept in double 
+ * precision. A first order section is a biquad with b2 = a2 = 0.
+ */
+public class Biquad {
+	private double b0, b1, b2, a1, a2;
+	private double z1, z2;
+
+	/**
+	 * The coefficients are normalized by a0
+	 */
+	public Biquad(double b0, double b1, double b2, double a0, double a1, double a2) {
+		this.b0 = b0 / a0;
+		this.b1 = b1 / a0;
+		this.b2 = b2 / a0;
+		this.a1 = a1 / a0;
+		this.a2 = a2 / a0;
+	}
+
+	/**
+	 * @return a section with the same coefficients and its own state
+	 */
+	public Biquad copy() {
+		return new Biquad(b0, b1, b2, 1, a1, a2);
+	}
+
+	//-- sections, from the bilinear transform of the analog prototypes
+
+	public static Biquad lowPass(double samplesPerSecond, double cutoff, double q) {
+		double w0 = 2*Math.PI * cutoff / samplesPerSecond;
+		double cos = Math.cos(w0);
+		double alpha = Math.sin(w0) / (2*q);
+		return new Biquad((1-cos)/2, 1-cos, (1-cos)/2, 1+alpha, -2*cos, 1-alpha);
+	}
+
+	public static Biquad highPass(double samplesPerSecond, double cutoff, double q) {
+		double w0 = 2*Math.PI * cutoff / samplesPerSecond;
+		double cos = Math.cos(w0);
+		double alpha = Math.sin(w0) / (2*q);
+		return new Biquad((1+cos)/2, -(1+cos), (1+cos)/2, 1+alpha, -2*cos, 1-alpha);
+	}
+
+	public static Biquad notch(double samplesPerSecond, double frequency, double q) {
+		double w0 = 2*Math.PI * frequency / samplesPerSecond;
+		double cos = Math.cos(w0);
+		double alpha = Math.sin(w0) / (2*q);
+		return new Biquad(1, -2*cos, 1, 1+alpha, -2*cos, 1-alpha);
+	}
+
+	public static Biquad firstOrderLowPass(double samplesPerSecond, double cutoff) {
+		double k = Math.tan(Math.PI * cutoff / samplesPerSecond);
+		return new Biquad(k, k, 0, k+1, k-1, 0);
+	}
+
+	public static Biquad firstOrderHighPass(double samplesPerSecond, double cutoff) {
+		double k = Math.tan(Math.PI * cutoff / samplesPerSecond);
+		return new Biquad(1, -1, 0, k+1, k-1, 0);
+	}
+
+	//-- filtering
+	/**
+	 * @return number of samples after which the response to an impulse is below 
+	 * StreamFilter.SETTLED, from the radius of the poles
+	 */
+	public int getSettlingTime() {
+		double discriminant = a1*a1 - 4*a2;
+		double radius;
+		if(discriminant < 0) {
+			radius = Math.sqrt(a2);
+		} else {
+			double root = Math.sqrt(discriminant);
+			radius = Math.max(Math.abs((-a1 + root)/2), Math.abs((-a1 - root)/2));
+		}
+		
+		if(radius < 1e-9)
+			return 2;
+		return (int)Math.ceil(Math.log(StreamFilter.SETTLED) / Math.log(radius)) + 2;
+	}
+
+
+	public void reset() {
+		z1 = 0;
+		z2 = 0;
+	}
+
+	/**
+	 * Put the section in the state it would reach after a long constant input, 
+	 * so that a signal starting far from 0 doesn't ring
+	 * @param x the constant input
+	 * @return the output for that input
+	 */
+	public double settle(double x) {
+		double y = x * (b0 + b1 + b2) / (1 + a1 + a2);
+		z2 = b2*x - a2*y;
+		z1 = b1*x - a1*y + z2;
+		return y;
+	}
+
+	public double process(double x) {
+		double y = b0*x + z1;
+		z1 = b1*x - a1*y + z2;
+		z2 = b2*x - a2*y;
+		return y;
+	}
+
+	/**
+	 * Filter a block in place
+	 */
+	public void process(double[] values, int off, int len) {
+		double b0 = this.b0, b1 = this.b1, b2 = this.b2, a1 = this.a1, a2 = this.a2;
+		double z1 = this.z1, z2 = this.z2;
+		for(int i=off;i<off+len;i++) {
+			double x = values[i];
+			double y = b0*x + z1;
+			z1 = b1*x - a1*y + z2;
+			z2 = b2*x - a2*y;
+			values[i] = y;
+		}
+		this.z1 = z1;
+		this.z2 = z2;
+	}
+}
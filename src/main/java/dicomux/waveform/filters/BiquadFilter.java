@@ -0,0 +1,77 @@
+package dicomux.waveform.filters;
+
+/**
+ * A cascade of biquad sections, run as a causal stream.<br/>
+ * The block goes through each section in turn while it is in the cache.
+ */
+public class BiquadFilter extends AStreamFilter {
+	private static final int BLOCK_SIZE = 4096;
+	
+	protected Biquad[] sections;
+	
+	//state carried between blocks
+	private boolean started;
+	protected double[] block;
+
+	public BiquadFilter(Biquad ... sections) {
+		this.sections = sections;
+		this.block = new double[BLOCK_SIZE];
+	}
+
+	public void reset() {
+		this.started = false;
+	}
+
+	public int getDelay() {
+		return 0;
+	}
+	
+	/**
+	 * @return true if the random access output is the causal stream, like here. The sections 
+	 * of such cascades can be merged into one by CombinedFilter.
+	 */
+	protected boolean isCausal() {
+		return true;
+	}
+	
+	public int getSettlingTime() {
+		int time = 0;
+		for(Biquad section: sections)
+			time += section.getSettlingTime();
+		
+		return time;
+	}
+
+	public void process(int[] in, int off, int len, int[] out) {
+		if(!started && len > 0) {
+			settle(in[off]);
+			started = true;
+		}
+		
+		for(int first=off;first<off+len;first+=BLOCK_SIZE) {
+			int count = Math.min(BLOCK_SIZE, off + len - first);
+			for(int i=0;i<count;i++)
+				block[i] = in[first + i];
+			
+			run(block, count);
+			for(int i=0;i<count;i++)
+				out[first + i] = (int)Math.round(block[i]);
+		}
+	}
+	
+	/**
+	 * Start from the state a constant input would give, instead of a step from 0
+	 */
+	protected void settle(double x) {
+		for(Biquad section: sections)
+			x = section.settle(x);
+	}
+	
+	/**
+	 * Each section over the whole block
+	 */
+	protected void run(double[] values, int len) {
+		for(Biquad section: sections)
+			section.process(values, 0, len);
+	}
+}
@@ -0,0 +1,181 @@
+package dicomux.waveform.filters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import dicomux.waveform.store.ArraySampleStore;
+import dicomux.waveform.store.SampleStore;
+
+/**
+ * Butterworth filter, as a cascade of biquad sections.<br/>
+ * As a stream the filter is causal, like any biquad cascade. With random access (init), it is run forward and 
+ * then backward over the signal: the phase is cancelled and the QRS and ST segments 
+ * are not distorted, the attenuation is doubled.
+ */
+public class ButterworthFilter extends BiquadFilter {
+	private int order;
+
+	private ButterworthFilter(List<Biquad> sections, int order) {
+		super(sections.toArray(new Biquad[sections.size()]));
+		this.order = order;
+	}
+	
+	public static ButterworthFilter lowPass(int order, int samplesPerSecond, double cutoff) {
+		List<Biquad> sections = new ArrayList<Biquad>();
+		addLowPass(sections, order, samplesPerSecond, cutoff);
+		return new ButterworthFilter(sections, order);
+	}
+	
+	public static ButterworthFilter highPass(int order, int samplesPerSecond, double cutoff) {
+		List<Biquad> sections = new ArrayList<Biquad>();
+		addHighPass(sections, order, samplesPerSecond, cutoff);
+		return new ButterworthFilter(sections, order);
+	}
+	
+	/**
+	 * A high pass followed by a low pass, in a single filter
+	 */
+	public static ButterworthFilter bandPass(int order, int samplesPerSecond, double low, double high) {
+		List<Biquad> sections = new ArrayList<Biquad>();
+		addHighPass(sections, order, samplesPerSecond, low);
+		addLowPass(sections, order, samplesPerSecond, high);
+		return new ButterworthFilter(sections, 2*order);
+	}
+	
+	/**
+	 * The poles of the prototype are on a half circle, each conjugate pair gives a 
+	 * second order section, an odd order has a real pole left which gives a first order section.
+	 */
+	private static double getQ(int order, int section) {
+		double angle = Math.PI/2 + Math.PI*(2*section + 1)/(2*order);
+		return -1 / (2*Math.cos(angle));
+	}
+	
+	private static void addLowPass(List<Biquad> sections, int order, int samplesPerSecond, double cutoff) {
+		for(int k=0;k<order/2;k++)
+			sections.add(Biquad.lowPass(samplesPerSecond, cutoff, getQ(order, k)));
+		if(order % 2 == 1)
+			sections.add(Biquad.firstOrderLowPass(samplesPerSecond, cutoff));
+	}
+	
+	private static void addHighPass(List<Biquad> sections, int order, int samplesPerSecond, double cutoff) {
+		for(int k=0;k<order/2;k++)
+			sections.add(Biquad.highPass(samplesPerSecond, cutoff, getQ(order, k)));
+		if(order % 2 == 1)
+			sections.add(Biquad.firstOrderHighPass(samplesPerSecond, cutoff));
+	}
+	
+	//-- random access, forward and backward
+	
+	/**
+	 * The output is run forward and backward, the sections can't be merged with other cascades
+	 */
+	protected boolean isCausal() {
+		return false;
+	}
+	
+	public void init(SampleStore values) {
+		int size = values.size();
+		this.data = new int[size];
+		if(size == 0)
+			return;
+		
+		// the ends are extended with a point reflection, against the edge effects
+		int pad = Math.min(size - 1, 3*order);
+		int blockSize = block.length;
+		int firstValue = values.get(0);
+		int lastValue = values.get(size - 1);
+		double[] front = new double[pad];
+		double[] back = new double[pad];
+		for(int i=0;i<pad;i++) {
+			front[i] = 2*firstValue - values.get(pad - i);
+			back[i] = 2*lastValue - values.get(size - 2 - i);
+		}
+		
+		// forward
+		settle(pad > 0 ? front[0] : firstValue);
+		run(front, pad);
+		int[] samples = new int[blockSize];
+		for(int first=0;first<size;first+=blockSize) {
+			int count = Math.min(blockSize, size - first);
+			values.get(first, samples, 0, count);
+			for(int i=0;i<count;i++)
+				block[i] = samples[i];
+			
+			run(block, count);
+			for(int i=0;i<count;i++)
+				data[first + i] = (int)Math.round(block[i]);
+		}
+		run(back, pad);
+		
+		// backward, starting from the end of the extension
+		reverse(back);
+		settle(pad > 0 ? back[0] : data[size - 1]);
+		run(back, pad);
+		for(int last=size;last>0;last-=blockSize) {
+			int count = Math.min(blockSize, last);
+			for(int i=0;i<count;i++)
+				block[i] = data[last - 1 - i];
+			
+			run(block, count);
+			for(int i=0;i<count;i++)
+				data[last - 1 - i] = (int)Math.round(block[i]);
+		}
+		
+		reset();
+	}
+	
+	/**
+	 * Forward and backward over a part of the signal, with the warm-up on both sides.
+	 * At the ends of the signal, the same extension as init is used.
+	 */
+	public void compute(SampleStore values, int from, int to, int[] out) {
+		int size = values.size();
+		int warmUp = getSettlingTime();
+		int start = Math.max(0, from - warmUp);
+		int end = Math.min(size, to + warmUp);
+		int pad = Math.min(end - start - 1, 3*order);
+		int front = (start == 0) ? pad : 0;
+		int back = (end == size) ? pad : 0;
+		
+		int[] samples = new int[end - start];
+		values.get(start, samples, 0, samples.length);
+		double[] work = new double[front + samples.length + back];
+		for(int i=0;i<front;i++)
+			work[i] = 2*samples[0] - samples[pad - i];
+		for(int i=0;i<samples.length;i++)
+			work[front + i] = samples[i];
+		for(int i=0;i<back;i++)
+			work[front + samples.length + i] = 2*samples[samples.length - 1] - samples[samples.length - 2 - i];
+		
+		settle(work[0]);
+		run(work, work.length);
+		reverse(work);
+		settle(work[0]);
+		run(work, work.length);
+		reverse(work);
+		reset();
+		
+		for(int i=from;i<to;i++)
+			out[i - from] = (int)Math.round(work[front + i - start]);
+	}
+	
+	private static void reverse(double[] values) {
+		for(int i=0, j=values.length-1;i<j;i++, j--) {
+			double tmp = values[i];
+			values[i] = values[j];
+			values[j] = tmp;
+		}
+	}
+
+	public static void main(String[] args) {
+		int[] data = new int[2000];
+		for(int i=0;i<data.length;i++)
+			data[i] = (int)(1000*Math.sin(2*Math.PI*i*5/500.0) + 300*Math.sin(2*Math.PI*i*100/500.0));
+		
+		ButterworthFilter filter = ButterworthFilter.lowPass(4, 500, 40);
+		filter.init(new ArraySampleStore(data));
+		for(int i=1000;i<1020;i++)
+			System.out.println(data[i] + "\t" + filter.get(i));
+	}
+}
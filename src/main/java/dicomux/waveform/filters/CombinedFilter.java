@@ -1,27 +1,89 @@
 package dicomux.waveform.filters;
 
-public class CombinedFilter implements Filter {
-	private Filter[] filters;
-	private int[] data;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs filters one after the other, each one on the output of the previous one.<br/>
+ * All the stages are run on a block before the next block is read, so there is a single 
+ * output and the block stays in the cache. Following causal biquad cascades are merged into
+ * one, their samples are not rounded between the stages. The merged cascade has copies of 
+ * the sections, the original filters keep their own state. A ButterworthFilter stays a
+ * stage of its own, but only its process is called here: it is causal like the other 
+ * stages, without the zero phase of its own init.
+ */
+public class CombinedFilter extends AStreamFilter {
+	private StreamFilter[] filters;
 	
-	public CombinedFilter(Filter ... filters) {
-		this.filters = filters;
+	public CombinedFilter(StreamFilter ... filters) {
+		this.filters = fuse(filters);
 	}
-
-	public void init(int[] values) {
-		this.data = new int[values.length];
-		System.arraycopy(values, 0, data, 0, values.length);
+	
+	private static StreamFilter[] fuse(StreamFilter[] filters) {
+		// flatten the combined filters
+		List<StreamFilter> stages = new ArrayList<StreamFilter>();
+		for(StreamFilter f: filters) {
+			if(f instanceof CombinedFilter) {
+				for(StreamFilter g: ((CombinedFilter)f).filters)
+					stages.add(g);
+			} else {
+				stages.add(f);
+			}
+		}
 		
-		for(Filter f: filters) {			
-			f.init(this.data);
-			for(int i=0;i<data.length;i++) {
-				data[i] = f.get(i);
+		// merge the causal biquad cascades which follow each other
+		List<StreamFilter> fused = new ArrayList<StreamFilter>();
+		List<Biquad> sections = new ArrayList<Biquad>();
+		for(StreamFilter f: stages) {
+			if(f instanceof BiquadFilter && ((BiquadFilter)f).isCausal()) {
+				for(Biquad section: ((BiquadFilter)f).sections)
+					sections.add(section.copy());
+				continue;
 			}
+			
+			if(!sections.isEmpty()) {
+				fused.add(new BiquadFilter(sections.toArray(new Biquad[sections.size()])));
+				sections.clear();
+			}
+			fused.add(f);
 		}
+		if(!sections.isEmpty())
+			fused.add(new BiquadFilter(sections.toArray(new Biquad[sections.size()])));
+		
+		return fused.toArray(new StreamFilter[fused.size()]);
+	}
+
+	public void reset() {
+		for(StreamFilter f: filters)
+			f.reset();
 	}
 
-	public int get(int index) {
-		return data[index];
+	public int getDelay() {
+		int delay = 0;
+		for(StreamFilter f: filters)
+			delay += f.getDelay();
+		
+		return delay;
+	}
+
+
+	public int getSettlingTime() {
+		int time = 0;
+		for(StreamFilter f: filters)
+			time += f.getSettlingTime();
+		
+		return time;
+	}
+
+	public void process(int[] in, int off, int len, int[] out) {
+		if(filters.length == 0) {
+			System.arraycopy(in, off, out, off, len);
+			return;
+		}
+		
+		filters[0].process(in, off, len, out);
+		for(int f=1;f<filters.length;f++)
+			filters[f].process(out, off, len, out);
 	}
 
 }
@@ -0,0 +1,81 @@
+package dicomux.waveform.filters;
+
+/**
+ * Radix-2 complex fast Fourier transform, in place.<br/>
+ * The twiddle factors and the bit reversal are computed once for a size.
+ */
+class FFT {
+	private int size;
+	private int[] reversed;
+	private double[] cos;
+	private double[] sin;
+
+	/**
+	 * @param size a power of two
+	 */
+	public FFT(int size) {
+		if(Integer.bitCount(size) != 1)
+			throw new IllegalArgumentException("The size of a FFT must be a power of two: " + size);
+		
+		this.size = size;
+		this.reversed = new int[size];
+		int bits = Integer.numberOfTrailingZeros(size);
+		for(int i=0;i<size;i++)
+			reversed[i] = (bits == 0) ? 0 : Integer.reverse(i) >>> (32 - bits);
+		
+		this.cos = new double[size/2];
+		this.sin = new double[size/2];
+		for(int i=0;i<size/2;i++) {
+			cos[i] = Math.cos(2*Math.PI*i/size);
+			sin[i] = Math.sin(2*Math.PI*i/size);
+		}
+	}
+	
+	public int getSize() {
+		return size;
+	}
+	
+	public void forward(double[] re, double[] im) {
+		transform(re, im, -1);
+	}
+	
+	/**
+	 * The inverse transform, scaled by 1/size
+	 */
+	public void inverse(double[] re, double[] im) {
+		transform(re, im, 1);
+		for(int i=0;i<size;i++) {
+			re[i] /= size;
+			im[i] /= size;
+		}
+	}
+	
+	private void transform(double[] re, double[] im, int sign) {
+		for(int i=0;i<size;i++) {
+			int j = reversed[i];
+			if(j > i) {
+				double tmp = re[i]; re[i] = re[j]; re[j] = tmp;
+				tmp = im[i]; im[i] = im[j]; im[j] = tmp;
+			}
+		}
+		
+		for(int length=2;length<=size;length<<=1) {
+			int half = length/2;
+			int step = size/length;
+			for(int start=0;start<size;start+=length) {
+				for(int k=0;k<half;k++) {
+					double wr = cos[k*step];
+					double wi = sign*sin[k*step];
+					int a = start + k;
+					int b = a + half;
+					double xr = re[b]*wr - im[b]*wi;
+					double xi = re[b]*wi + im[b]*wr;
+					re[b] = re[a] - xr;
+					im[b] = im[a] - xi;
+					re[a] += xr;
+					im[a] += xi;
+				}
+			}
+		}
+	}
+}
@@ -1,6 +1,8 @@
 package dicomux.waveform.filters;
 
+import dicomux.waveform.store.SampleStore;
+
 public interface Filter {
-	public void init(int[] values);
+	public void init(SampleStore values);
 	public int get(int index);
 }
@@ -0,0 +1,103 @@
+package dicomux.waveform.filters;
+
+import java.util.Random;
+
+import dicomux.waveform.store.ArraySampleStore;
+
+/**
+ * Compares a chain of causal filters run stage by stage over the whole signal, 
+ * each stage with its own full length output, to the same chain in a CombinedFilter 
+ * initialized as the application does it: all the stages on one block of 4096 samples 
+ * before the next one, the delay removed. Both outputs are checked before the timings 
+ * are printed, they only differ by the rounding between the merged biquad stages.<br/>
+ * usage: FilterBenchmark [seconds of signal] [runs]
+ */
+public class FilterBenchmark {
+	private static final int SAMPLES_PER_SECOND = 500;
+	//largest difference allowed between both outputs
+	private static final int TOLERANCE = 2;
+
+	/**
+	 * plain causal stages, the same in both runs: the biquad cascades are merged by CombinedFilter
+	 */
+	private static StreamFilter[] createChain() {
+		return new StreamFilter[] {
+			new NotchFilter(SAMPLES_PER_SECOND, 50, 3),
+			new BiquadFilter(Biquad.highPass(SAMPLES_PER_SECOND, 0.5, Math.sqrt(0.5))),
+			new BiquadFilter(Biquad.lowPass(SAMPLES_PER_SECOND, 40, Math.sqrt(0.5))),
+			new MovingAverageFilter(SAMPLES_PER_SECOND/100)
+		};
+	}
+
+	/**
+	 * the previous CombinedFilter: every stage as a stream over the whole signal
+	 */
+	private static int[] runStages(int[] signal) {
+		int[] data = signal;
+		for(StreamFilter stage: createChain()) {
+			int[] out = new int[data.length];
+			stage.reset();
+			stage.process(data, 0, data.length, out);
+			data = out;
+		}
+		
+		return data;
+	}
+	
+	/**
+	 * the blocked path of AStreamFilter.init, the output is not delayed
+	 */
+	private static CombinedFilter runCombined(int[] signal) {
+		CombinedFilter filter = new CombinedFilter(createChain());
+		filter.init(new ArraySampleStore(signal));
+		return filter;
+	}
+
+	public static void main(String[] args) {
+		int seconds = (args.length > 0) ? Integer.parseInt(args[0]) : 3600;
+		int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+		
+		// a random walk, with some mains noise
+		Random random = new Random(0);
+		int[] signal = new int[seconds * SAMPLES_PER_SECOND];
+		int value = 0;
+		for(int i=0;i<signal.length;i++) {
+			value += random.nextInt(21) - 10;
+			signal[i] = value + (int)(50*Math.sin(2*Math.PI*50*i/SAMPLES_PER_SECOND));
+		}
+		
+		// the combined output i is the stream output i + delay, the end is flushed differently
+		int[] stageOutput = runStages(signal);
+		CombinedFilter combined = runCombined(signal);
+		int delay = combined.getDelay();
+		int difference = 0;
+		for(int i=0;i+delay<signal.length;i++)
+			difference = Math.max(difference, Math.abs(stageOutput[i + delay] - combined.get(i)));
+		System.out.println("largest difference: " + difference);
+		if(difference > TOLERANCE) {
+			System.out.println("the outputs differ, no timing");
+			System.exit(1);
+		}
+		
+		// the first runs let the JIT compile both
+		long stages = 0;
+		long blocks = 0;
+		for(int run=0;run<runs;run++) {
+			long start = System.nanoTime();
+			runStages(signal);
+			long middle = System.nanoTime();
+			runCombined(signal);
+			long end = System.nanoTime();
+			
+			if(run >= runs/2) {
+				stages += middle - start;
+				blocks += end - middle;
+			}
+		}
+		
+		int measured = runs - runs/2;
+		System.out.println(signal.length + " samples, " + measured + " measured runs");
+		System.out.println("stage by stage: " + stages/measured/1000000 + " ms");
+		System.out.println("combined:       " + blocks/measured/1000000 + " ms");
+	}
+}
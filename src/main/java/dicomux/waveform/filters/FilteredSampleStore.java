@@ -0,0 +1,29 @@
+package dicomux.waveform.filters;
+
+import dicomux.waveform.store.SampleStore;
+
+/**
+ * Exposes the output of an initialized filter as a sample store
+ */
+public class FilteredSampleStore implements SampleStore {
+	private Filter filter;
+	private int size;
+
+	public FilteredSampleStore(Filter filter, int size) {
+		this.filter = filter;
+		this.size = size;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int get(int index) {
+		return filter.get(index);
+	}
+
+	public void get(int from, int[] dst, int offset, int length) {
+		for(int i = 0; i < length; i++)
+			dst[offset + i] = filter.get(from + i);
+	}
+}
@@ -0,0 +1,228 @@
+package dicomux.waveform.filters;
+
+import java.util.Arrays;
+
+import dicomux.waveform.store.ArraySampleStore;
+
+/**
+ * Finite impulse response filter.<br/>
+ * The windowed sinc kernels are symmetric, so the phase is linear: with random access (init)
+ * the delay of (taps-1)/2 samples is removed and the waves are not distorted.
+ * Short kernels are convolved directly, in a loop the JIT can unroll and vectorize. 
+ * Above FFT_THRESHOLD taps, the blocks are convolved by FFT with overlap-add.
+ */
+public class FirFilter extends AStreamFilter {
+	//above this number of taps, the FFT is faster than the direct convolution
+	private static final int FFT_THRESHOLD = 64;
+	
+	private double[] kernel;
+	
+	//direct convolution: the kernel reversed, and the last inputs
+	private double[] reversed;
+	private double[] history;
+	private double[] work;
+	
+	//FFT convolution: transform of the kernel, and the part of the outputs which goes over the next segment
+	private FFT fft;
+	private double[] kernelRe;
+	private double[] kernelIm;
+	private double[] segmentRe;
+	private double[] segmentIm;
+	private double[] tail;
+	
+	private boolean started;
+
+	/**
+	 * @param kernel the impulse response, an odd number of taps
+	 */
+	public FirFilter(double[] kernel) {
+		this.kernel = kernel;
+		int taps = kernel.length;
+		
+		if(taps > FFT_THRESHOLD) {
+			int size = Integer.highestOneBit(4*taps - 1);
+			this.fft = new FFT(size);
+			this.kernelRe = new double[size];
+			this.kernelIm = new double[size];
+			System.arraycopy(kernel, 0, kernelRe, 0, taps);
+			fft.forward(kernelRe, kernelIm);
+			
+			this.segmentRe = new double[size];
+			this.segmentIm = new double[size];
+			this.tail = new double[taps - 1];
+		} else {
+			this.reversed = new double[taps];
+			for(int k=0;k<taps;k++)
+				reversed[k] = kernel[taps - 1 - k];
+			this.history = new double[taps - 1];
+			this.work = new double[0];
+		}
+	}
+	
+	//-- kernels, windowed sinc with a Hamming window
+	
+	public static FirFilter lowPass(int samplesPerSecond, double cutoff, int taps) {
+		return new FirFilter(createLowPass(samplesPerSecond, cutoff, taps));
+	}
+	
+	/**
+	 * The low pass kernel, subtracted from an impulse
+	 */
+	public static FirFilter highPass(int samplesPerSecond, double cutoff, int taps) {
+		double[] kernel = createLowPass(samplesPerSecond, cutoff, taps);
+		for(int i=0;i<kernel.length;i++)
+			kernel[i] = -kernel[i];
+		kernel[kernel.length/2] += 1;
+		
+		return new FirFilter(kernel);
+	}
+	
+	/**
+	 * The difference of two low pass kernels
+	 */
+	public static FirFilter bandPass(int samplesPerSecond, double low, double high, int taps) {
+		double[] kernel = createLowPass(samplesPerSecond, high, taps);
+		double[] lower = createLowPass(samplesPerSecond, low, taps);
+		for(int i=0;i<kernel.length;i++)
+			kernel[i] -= lower[i];
+		
+		return new FirFilter(kernel);
+	}
+	
+	private static double[] createLowPass(int samplesPerSecond, double cutoff, int taps) {
+		taps |= 1; //odd, so that the delay is a whole number of samples
+		double fc = cutoff / samplesPerSecond;
+		int middle = taps/2;
+		double[] kernel = new double[taps];
+		double sum = 0;
+		for(int i=0;i<taps;i++) {
+			int n = i - middle;
+			double sinc = (n == 0) ? 2*fc : Math.sin(2*Math.PI*fc*n) / (Math.PI*n);
+			double window = 0.54 - 0.46*Math.cos(2*Math.PI*i/(taps - 1));
+			kernel[i] = sinc * window;
+			sum += kernel[i];
+		}
+		
+		// unity gain for the frequencies which pass
+		for(int i=0;i<taps;i++)
+			kernel[i] /= sum;
+		
+		return kernel;
+	}
+	
+	//-- stream
+
+	public void reset() {
+		this.started = false;
+	}
+
+	public int getDelay() {
+		return (kernel.length - 1)/2;
+	}
+	
+	public int getSettlingTime() {
+		return kernel.length - 1;
+	}
+
+	public void process(int[] in, int off, int len, int[] out) {
+		if(len <= 0)
+			return;
+		
+		if(!started) {
+			start(in[off]);
+			started = true;
+		}
+		
+		if(fft == null)
+			processDirect(in, off, len, out);
+		else
+			processFFT(in, off, len, out);
+	}
+	
+	/**
+	 * The signal is considered constant before its first sample, instead of 0
+	 */
+	private void start(int first) {
+		int taps = kernel.length;
+		if(fft == null) {
+			Arrays.fill(history, first);
+		} else {
+			// what the constant past adds to the first outputs
+			double sum = 0;
+			for(int j=taps-2;j>=0;j--) {
+				sum += kernel[j + 1];
+				tail[j] = first * sum;
+			}
+		}
+	}
+	
+	private void processDirect(int[] in, int off, int len, int[] out) {
+		int taps = reversed.length;
+		int keep = taps - 1;
+		if(work.length < keep + len)
+			work = new double[keep + len];
+		
+		// the last inputs, then the block
+		System.arraycopy(history, 0, work, 0, keep);
+		for(int i=0;i<len;i++)
+			work[keep + i] = in[off + i];
+		
+		double[] h = reversed;
+		for(int i=0;i<len;i++) {
+			double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+			int k = 0;
+			for(;k+3<taps;k+=4) {
+				s0 += h[k]*work[i + k];
+				s1 += h[k+1]*work[i + k + 1];
+				s2 += h[k+2]*work[i + k + 2];
+				s3 += h[k+3]*work[i + k + 3];
+			}
+			for(;k<taps;k++)
+				s0 += h[k]*work[i + k];
+			
+			out[off + i] = (int)Math.round(s0 + s1 + s2 + s3);
+		}
+		
+		System.arraycopy(work, len, history, 0, keep);
+	}
+	
+	private void processFFT(int[] in, int off, int len, int[] out) {
+		int size = fft.getSize();
+		int keep = kernel.length - 1;
+		int segment = size - keep;
+		
+		for(int first=0;first<len;first+=segment) {
+			int count = Math.min(segment, len - first);
+			for(int i=0;i<size;i++) {
+				segmentRe[i] = (i < count) ? in[off + first + i] : 0;
+				segmentIm[i] = 0;
+			}
+			
+			fft.forward(segmentRe, segmentIm);
+			for(int i=0;i<size;i++) {
+				double re = segmentRe[i]*kernelRe[i] - segmentIm[i]*kernelIm[i];
+				double im = segmentRe[i]*kernelIm[i] + segmentIm[i]*kernelRe[i];
+				segmentRe[i] = re;
+				segmentIm[i] = im;
+			}
+			fft.inverse(segmentRe, segmentIm);
+			
+			// overlap-add: the tail of the previous segments, then keep the new tail
+			for(int i=0;i<count;i++)
+				out[off + first + i] = (int)Math.round(segmentRe[i] + (i < keep ? tail[i] : 0));
+			for(int j=0;j<keep;j++)
+				tail[j] = segmentRe[count + j] + (count + j < keep ? tail[count + j] : 0);
+		}
+	}
+
+	public static void main(String[] args) {
+		int[] data = new int[2000];
+		for(int i=0;i<data.length;i++)
+			data[i] = (int)(1000*Math.sin(2*Math.PI*i*5/500.0) + 300*Math.sin(2*Math.PI*i*100/500.0));
+		
+		FirFilter filter = FirFilter.lowPass(500, 40, 101);
+		filter.init(new ArraySampleStore(data));
+		for(int i=1000;i<1020;i++)
+			System.out.println(data[i] + "\t" + filter.get(i));
+	}
+}
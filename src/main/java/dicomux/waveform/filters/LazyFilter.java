@@ -0,0 +1,91 @@
+package dicomux.waveform.filters;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import dicomux.waveform.store.SampleStore;
+
+/**
+ * Filters only the parts of the signal which are asked for.<br/>
+ * The output is computed by blocks, each one with the warm-up its filter needs, 
+ * and the last blocks used are kept. init costs nothing, which makes sense for long 
+ * recordings where only a few seconds are visible at a time.<br/>
+ * get may be called from several threads, the screen and a print job: the blocks 
+ * are computed and looked up under a lock, only the last block is read without it.
+ */
+public class LazyFilter implements Filter {
+	private static final int BLOCK_SHIFT = 14;
+	private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+	private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+	//blocks kept, 4MB
+	private static final int MAX_BLOCKS = 64;
+	
+	private AStreamFilter filter;
+	private SampleStore values;
+	private Map<Integer, int[]> blocks;
+	
+	//a block and its index, published together
+	private static class Block {
+		final int index;
+		final int[] values;
+		
+		Block(int index, int[] values) {
+			this.index = index;
+			this.values = values;
+		}
+	}
+	
+	//last block used, most calls are for the same one
+	private volatile Block last;
+
+	public LazyFilter(AStreamFilter filter) {
+		this.filter = filter;
+		this.blocks = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+				return size() > MAX_BLOCKS;
+			}
+		};
+	}
+	
+	public synchronized void init(SampleStore values) {
+		this.values = values;
+		this.blocks.clear();
+		this.last = null;
+	}
+
+	public int get(int index) {
+		int blockIndex = index >> BLOCK_SHIFT;
+		Block block = last;
+		if(block == null || block.index != blockIndex)
+			block = getBlock(blockIndex);
+		
+		return block.values[index & BLOCK_MASK];
+	}
+	
+	/**
+	 * The map is access ordered, even a lookup changes it, and the filter keeps the 
+	 * state of its stream while a block is computed
+	 */
+	private synchronized Block getBlock(int blockIndex) {
+		int[] output = blocks.get(blockIndex);
+		if(output == null) {
+			int from = blockIndex << BLOCK_SHIFT;
+			int to = Math.min(values.size(), from + BLOCK_SIZE);
+			output = new int[to - from];
+			filter.compute(values, from, to, output);
+			blocks.put(blockIndex, output);
+		}
+		
+		//published under the lock, so that init can't be followed by a block of the previous signal
+		last = new Block(blockIndex, output);
+		return last;
+	}
+	
+	/**
+	 * @return the most memory the blocks may use
+	 */
+	public static long getMaxBytes() {
+		return 4L * BLOCK_SIZE * MAX_BLOCKS;
+	}
+}
@@ -1,35 +1,49 @@
 package dicomux.waveform.filters;
 
-public class LowPassFilter implements Filter {
-	private double dt;
-	private double rc;
-	private int[] data;
+import dicomux.waveform.store.ArraySampleStore;
+
+public class LowPassFilter extends AStreamFilter {
+	private double alpha;
+	
+	//state carried between blocks
+	private boolean started;
+	private int previousOutput;
 
 	public LowPassFilter(int samplesPerSecond, double freq) {
-		this.dt = 1 / (double)samplesPerSecond;
-		this.rc = 1 / (2*Math.PI * freq);
+		double dt = 1 / (double)samplesPerSecond;
+		double rc = 1 / (2*Math.PI * freq);
+		this.alpha = dt / (rc+dt);
 	}
 	
-	public void init(int[] values) {
-		this.data = new int[values.length];
-		
-		double alpha = dt / (rc+dt);
-		data[0] = values[0];
-
-		for(int i=1;i<data.length;i++) {			
-			this.data[i] = (int)(alpha*values[i] + (1-alpha)*data[i-1]);					
-		}
+	public void reset() {
+		this.started = false;
 	}
-
-	public int get(int index) {
-		return data[index];
+	
+	public int getDelay() {
+		return 0;
+	}
+	
+	public int getSettlingTime() {
+		return (int)Math.ceil(Math.log(SETTLED) / Math.log(1-alpha));
+	}
+	
+	public void process(int[] in, int off, int len, int[] out) {
+		for(int i=off;i<off+len;i++) {
+			if(started)
+				previousOutput = (int)(alpha*in[i] + (1-alpha)*previousOutput);
+			else
+				previousOutput = in[i];
+			
+			started = true;
+			out[i] = previousOutput;
+		}
 	}
 
 	public static void main(String[] args) {
 		int[] data = {1, 2, 3, 4, 5, 6, 7, 8, 9};
 		
 		LowPassFilter filter = new LowPassFilter(1000, 60);
-		filter.init(data);
+		filter.init(new ArraySampleStore(data));
 		for(int i=0;i<data.length;i++)
 			System.out.println( filter.get(i) );
 	}
@@ -0,0 +1,163 @@
+package dicomux.waveform.filters;
+
+import dicomux.waveform.store.ArraySampleStore;
+
+/**
+ * Median of the points/2 samples on each side of a sample.<br/>
+ * The window is split in two heaps, the lower half with its maximum on top and 
+ * the upper half with its minimum on top. Each heap knows where a sample of the window is,
+ * so the sample leaving the window is removed in log(points), not searched for.
+ * As a stream, the output is delayed by points/2 samples.
+ */
+public class MedianFilter extends AStreamFilter {
+	private static final int LOWER = 0;
+	private static final int UPPER = 1;
+	
+	private int points;
+	
+	//state carried between blocks
+	private int[] window;		//samples, by slot
+	private int seen;
+	private int[][] heaps;		//[heap][position] = slot
+	private int[] sizes;
+	private int[] heapOf;		//[slot] = heap holding it
+	private int[] positionOf;	//[slot] = position in its heap
+
+	public MedianFilter(int points) {
+		this.points = points;
+		int length = points/2*2 + 1;
+		this.window = new int[length];
+		this.heaps = new int[2][length];
+		this.sizes = new int[2];
+		this.heapOf = new int[length];
+		this.positionOf = new int[length];
+	}
+	
+	public void reset() {
+		this.seen = 0;
+		sizes[LOWER] = 0;
+		sizes[UPPER] = 0;
+	}
+	
+	public int getDelay() {
+		return points/2;
+	}
+	
+	public int getSettlingTime() {
+		return window.length;
+	}
+	
+	public void process(int[] in, int off, int len, int[] out) {
+		for(int i=off;i<off+len;i++) {
+			// the oldest sample leaves the window, the new one enters it
+			int slot = seen % window.length;
+			if(seen >= window.length)
+				remove(slot);
+			window[slot] = in[i];
+			insert(slot);
+			seen++;
+			
+			// the lower half has the extra sample, at the start of the signal the lower median is used
+			out[i] = window[heaps[LOWER][0]];
+		}
+	}
+	
+	//-- heaps
+	
+	private void insert(int slot) {
+		int heap = (sizes[LOWER] == 0 || window[slot] <= window[heaps[LOWER][0]]) ? LOWER : UPPER;
+		int position = sizes[heap]++;
+		put(heap, position, slot);
+		siftUp(heap, position);
+		balance();
+	}
+	
+	private void remove(int slot) {
+		int heap = heapOf[slot];
+		int position = positionOf[slot];
+		int last = --sizes[heap];
+		if(position != last) {
+			put(heap, position, heaps[heap][last]);
+			siftUp(heap, position);
+			siftDown(heap, positionOf[heaps[heap][position]]);
+		}
+		balance();
+	}
+	
+	/**
+	 * keep the size of the lower half equal to the size of the upper half, or one more
+	 */
+	private void balance() {
+		while(sizes[LOWER] > sizes[UPPER] + 1)
+			move(LOWER, UPPER);
+		while(sizes[UPPER] > sizes[LOWER])
+			move(UPPER, LOWER);
+	}
+	
+	private void move(int from, int to) {
+		int slot = heaps[from][0];
+		int last = --sizes[from];
+		if(last > 0) {
+			put(from, 0, heaps[from][last]);
+			siftDown(from, 0);
+		}
+		
+		int position = sizes[to]++;
+		put(to, position, slot);
+		siftUp(to, position);
+	}
+	
+	private void put(int heap, int position, int slot) {
+		heaps[heap][position] = slot;
+		heapOf[slot] = heap;
+		positionOf[slot] = position;
+	}
+	
+	/**
+	 * @return true if a should be nearer to the top than b
+	 */
+	private boolean above(int heap, int a, int b) {
+		return (heap == LOWER) ? window[a] > window[b] : window[a] < window[b];
+	}
+	
+	private void siftUp(int heap, int position) {
+		int[] h = heaps[heap];
+		while(position > 0) {
+			int parent = (position - 1) / 2;
+			if(!above(heap, h[position], h[parent]))
+				break;
+			
+			int slot = h[position];
+			put(heap, position, h[parent]);
+			put(heap, parent, slot);
+			position = parent;
+		}
+	}
+	
+	private void siftDown(int heap, int position) {
+		int[] h = heaps[heap];
+		while(true) {
+			int child = 2*position + 1;
+			if(child >= sizes[heap])
+				break;
+			if(child + 1 < sizes[heap] && above(heap, h[child + 1], h[child]))
+				child++;
+			if(!above(heap, h[child], h[position]))
+				break;
+			
+			int slot = h[position];
+			put(heap, position, h[child]);
+			put(heap, child, slot);
+			position = child;
+		}
+	}
+
+	public static void main(String[] args) {
+		int[] data = {1, 9, 3, 7, 5, 6, 2, 8, 4};
+		
+		MedianFilter filter = new MedianFilter(4);
+		filter.init(new ArraySampleStore(data));
+		for(int i=0;i<data.length;i++)
+			System.out.println( filter.get(i) );
+	}
+}
@@ -1,40 +1,59 @@
 package dicomux.waveform.filters;
 
-public class MovingAverageFilter implements Filter {
+import dicomux.waveform.store.ArraySampleStore;
+
+/**
+ * Average of the points/2 samples on each side of a sample.<br/>
+ * A running sum is kept, so the cost per sample doesn't depend on the window.
+ * As a stream, the output is delayed by points/2 samples.
+ */
+public class MovingAverageFilter extends AStreamFilter {
 	private int points;
-	private int[] data;
+	
+	//state carried between blocks: the last samples of the window
+	private int[] window;
+	private int seen;
+	private long sum;
 
 	public MovingAverageFilter(int points) {
 		this.points = points;
+		this.window = new int[points/2*2 + 1];
 	}
 	
-	public void init(int[] values) {
-		this.data = new int[values.length];
-		System.arraycopy(values, 0, data, 0, values.length);
-
-		for(int i=0;i<data.length;i++) {
-			int sum = 0;
-			int realPoints = 0;
-			for(int p=i-points/2;p<=i+points/2;p++) {
-				if(p >= 0 && p < data.length) {
-					sum += data[p];
-					realPoints++;
-				}							
-			}
-
-			this.data[i] = sum/realPoints;					
-		}
+	public void reset() {
+		this.seen = 0;
+		this.sum = 0;
 	}
-
-	public int get(int index) {
-		return data[index];
+	
+	public int getDelay() {
+		return points/2;
+	}
+	
+	public int getSettlingTime() {
+		return window.length;
+	}
+	
+	public void process(int[] in, int off, int len, int[] out) {
+		for(int i=off;i<off+len;i++) {
+			// the oldest sample leaves the window, the new one enters it
+			int slot = seen % window.length;
+			if(seen >= window.length)
+				sum -= window[slot];
+			window[slot] = in[i];
+			sum += in[i];
+			seen++;
+			
+			// at the start of the signal, only the samples we have
+			int realPoints = Math.min(seen, window.length);
+			out[i] = (int)(sum/realPoints);
+		}
 	}
 
 	public static void main(String[] args) {
 		int[] data = {1, 2, 3, 4, 5, 6, 7, 8, 9};
 		
 		MovingAverageFilter filter = new MovingAverageFilter(8);
-		filter.init(data);
+		filter.init(new ArraySampleStore(data));
 		for(int i=0;i<data.length;i++)
 			System.out.println( filter.get(i) );
 	}
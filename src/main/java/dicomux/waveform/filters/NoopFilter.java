@@ -1,15 +1,33 @@
 package dicomux.waveform.filters;
 
-public class NoopFilter implements Filter {
-	private int[] data;
+import dicomux.waveform.store.SampleStore;
 
-	public void init(int[] values) {
-		this.data = new int[values.length];
-		System.arraycopy(values, 0, data, 0, values.length);
+public class NoopFilter implements Filter, StreamFilter {
+	private SampleStore data;
+
+	public void init(SampleStore values) {
+		//nothing to compute, don't copy the samples
+		this.data = values;
 	}
 
 	public int get(int index) {
-		return data[index];
+		return data.get(index);
+	}
+
+	public void reset() {
+	}
+
+	public int getDelay() {
+		return 0;
+	}
+
+	public int getSettlingTime() {
+		return 0;
+	}
+
+	public void process(int[] in, int off, int len, int[] out) {
+		if(in != out)
+			System.arraycopy(in, off, out, off, len);
 	}
 
 }
@@ -0,0 +1,49 @@
+package dicomux.waveform.filters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import dicomux.waveform.store.ArraySampleStore;
+
+/**
+ * Removes the mains interference (50 or 60Hz) and its harmonics.<br/>
+ * One narrow biquad notch per frequency, up to the Nyquist frequency, run as a causal 
+ * stream: a long recording is filtered block by block, without copy.
+ */
+public class NotchFilter extends BiquadFilter {
+	//quality factor of each notch, the width of the notch is frequency/Q
+	private static final double Q = 30;
+
+	/**
+	 * @param samplesPerSecond	the sample rate
+	 * @param frequency			the mains frequency
+	 * @param harmonics			number of frequencies to remove, the mains frequency included
+	 */
+	public NotchFilter(int samplesPerSecond, double frequency, int harmonics) {
+		super(createSections(samplesPerSecond, frequency, harmonics));
+	}
+	
+	private static Biquad[] createSections(int samplesPerSecond, double frequency, int harmonics) {
+		List<Biquad> sections = new ArrayList<Biquad>();
+		for(int h=1;h<=harmonics;h++) {
+			// too close to the Nyquist frequency, the notch would be meaningless
+			if(h*frequency >= 0.45*samplesPerSecond)
+				break;
+			
+			sections.add(Biquad.notch(samplesPerSecond, h*frequency, Q));
+		}
+		
+		return sections.toArray(new Biquad[sections.size()]);
+	}
+
+	public static void main(String[] args) {
+		int[] data = new int[2000];
+		for(int i=0;i<data.length;i++)
+			data[i] = (int)(1000*Math.sin(2*Math.PI*i*5/500.0) + 300*Math.sin(2*Math.PI*i*50/500.0));
+		
+		NotchFilter filter = new NotchFilter(500, 50, 3);
+		filter.init(new ArraySampleStore(data));
+		for(int i=1000;i<1020;i++)
+			System.out.println(data[i] + "\t" + filter.get(i));
+	}
+}
@@ -0,0 +1,37 @@
+package dicomux.waveform.filters;
+
+/**
+ * A filter fed block by block.<br/>
+ * The state is carried from one block to the next, so a long recording can be 
+ * filtered through a small buffer, and live data as it arrives.
+ */
+public interface StreamFilter {
+	//relative part of the past left in the state once the filter has settled
+	public static final double SETTLED = 1e-3;
+	
+	/**
+	 * Forget the previous blocks, the next one is the start of a signal
+	 */
+	public void reset();
+	
+	/**
+	 * Filter the next block of the signal
+	 * @param in	input samples
+	 * @param off	first sample of the block, in both arrays
+	 * @param len	number of samples of the block
+	 * @param out	receives the output at the same positions, may be the input array
+	 */
+	public void process(int[] in, int off, int len, int[] out);
+	
+	/**
+	 * @return number of samples the output lags behind the input, 
+	 * non causal filters see that many samples ahead
+	 */
+	public int getDelay();
+	
+	/**
+	 * @return number of samples after which the output doesn't depend anymore on the 
+	 * samples before them, the warm-up needed to start in the middle of a signal
+	 */
+	public int getSettlingTime();
+}
@@ -0,0 +1,48 @@
+package dicomux.waveform.store;
+
+/**
+ * Samples kept in a heap array
+ */
+public class ArraySampleStore implements SampleStore {
+	private int[] data;
+
+	public ArraySampleStore(int[] data) {
+		this.data = data;
+	}
+
+	public int size() {
+		return data.length;
+	}
+
+	public int get(int index) {
+		return data[index];
+	}
+
+	public void get(int from, int[] dst, int offset, int length) {
+		System.arraycopy(data, from, dst, offset, length);
+	}
+
+	//--
+
+	public static class Builder implements SampleStoreBuilder {
+		private int[][] data;
+		private int[] written;
+
+		public Builder(int numberOfChannels, int numberOfSamples) {
+			this.data = new int[numberOfChannels][numberOfSamples];
+			this.written = new int[numberOfChannels];
+		}
+
+		public void append(int channel, int[] samples, int offset, int length) {
+			System.arraycopy(samples, offset, data[channel], written[channel], length);
+			written[channel] += length;
+		}
+
+		public SampleStore[] build() {
+			SampleStore[] stores = new SampleStore[data.length];
+			for(int i = 0; i < data.length; i++)
+				stores[i] = new ArraySampleStore(data[i]);
+			return stores;
+		}
+	}
+}
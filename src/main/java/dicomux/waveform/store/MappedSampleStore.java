@@ -0,0 +1,138 @@
+package dicomux.waveform.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Samples spilled to a temporary file and read back through a memory mapping.
+ * Only the pages that are actually read stay resident, so the heap usage 
+ * does not depend on the length of the recording.
+ */
+public class MappedSampleStore implements SampleStore {
+	//a mapping can't exceed 2GB, the channel is split in segments of 2^SEGMENT_SHIFT samples
+	private static final int SEGMENT_SHIFT = 26;
+	private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+	private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	private IntBuffer[] segments;
+	private int size;
+	private File file; //the spill file if it couldn't be deleted once mapped, shared by the channels
+
+	private MappedSampleStore(FileChannel channel, long position, int size) throws IOException {
+		this.size = size;
+		this.segments = new IntBuffer[(size + SEGMENT_SIZE - 1) / SEGMENT_SIZE];
+		for(int i = 0; i < segments.length; i++) {
+			int length = Math.min(SEGMENT_SIZE, size - i*SEGMENT_SIZE);
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, 
+					position + 4L*i*SEGMENT_SIZE, 4L*length)
+					.order(ByteOrder.nativeOrder()).asIntBuffer();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int get(int index) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		return segments[index >>> SEGMENT_SHIFT].get(index & SEGMENT_MASK);
+	}
+
+	/**
+	 * Delete the spill file if it is still there, when the samples are not needed anymore.
+	 * A file still locked by its mapping stays scheduled for deletion on exit.
+	 */
+	public void close() {
+		if(file != null && (file.delete() || !file.exists()))
+			file = null;
+	}
+
+	public void get(int from, int[] dst, int offset, int length) {
+		if(from < 0 || from + length > size)
+			throw new IndexOutOfBoundsException(from + "+" + length);
+
+		while(length > 0) {
+			IntBuffer segment = segments[from >>> SEGMENT_SHIFT].duplicate();
+			int position = from & SEGMENT_MASK;
+			int count = Math.min(length, SEGMENT_SIZE - position);
+			segment.position(position);
+			segment.get(dst, offset, count);
+
+			from += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	//--
+
+	/**
+	 * Writes the channels one after the other in a temporary file, 
+	 * each channel having a fixed region of numberOfSamples samples.
+	 */
+	public static class Builder implements SampleStoreBuilder {
+		private File file;
+		private RandomAccessFile raf;
+		private FileChannel channel;
+		private int numberOfSamples;
+		private int[] written;
+		private ByteBuffer buffer;
+
+		public Builder(int numberOfChannels, int numberOfSamples) throws IOException {
+			this.file = File.createTempFile("dicomux-", ".samples");
+			this.file.deleteOnExit();
+			this.raf = new RandomAccessFile(file, "rw");
+			this.channel = raf.getChannel();
+			this.numberOfSamples = numberOfSamples;
+			this.written = new int[numberOfChannels];
+			this.buffer = ByteBuffer.allocateDirect(64*1024).order(ByteOrder.nativeOrder());
+
+			raf.setLength(4L * numberOfChannels * numberOfSamples);
+		}
+
+		public void append(int c, int[] samples, int offset, int length) throws IOException {
+			int capacity = buffer.capacity() / 4;
+			while(length > 0) {
+				int count = Math.min(length, capacity);
+				buffer.clear();
+				buffer.asIntBuffer().put(samples, offset, count);
+				buffer.limit(4*count);
+
+				long position = 4L * ((long)c * numberOfSamples + written[c]);
+				while(buffer.hasRemaining())
+					position += channel.write(buffer, position);
+
+				written[c] += count;
+				offset += count;
+				length -= count;
+			}
+		}
+
+		public SampleStore[] build() throws IOException {
+			MappedSampleStore[] stores = new MappedSampleStore[written.length];
+			try {
+				for(int c = 0; c < written.length; c++)
+					stores[c] = new MappedSampleStore(channel, 4L * c * numberOfSamples, numberOfSamples);
+			} catch(IOException e) {
+				raf.close();
+				file.delete();
+				throw e;
+			}
+			//the mappings stay valid once the file is closed
+			raf.close();
+
+			//on POSIX the mapped pages of a deleted file stay readable, the file can go now.
+			//Elsewhere the mapping locks it, it is deleted when the stores are closed
+			File spill = file.delete() ? null : file;
+			for(MappedSampleStore store: stores)
+				store.file = spill;
+			return stores;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package dicomux.waveform.store;
+
+/**
+ * Multi-resolution minimum / maximum summary of a channel.<br/>
+ * Level 0 holds the extremes of each block of BLOCK_SIZE samples, each following level
+ * merges two entries of the previous one. The extremes of any range are then found
+ * with a logarithmic number of lookups plus the partial blocks at both ends.
+ */
+public class MinMaxIndex {
+	public static final int BLOCK_SHIFT = 8;
+	public static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+	private SampleStore samples;
+	private int[][] minimums; //[level][entry]
+	private int[][] maximums;
+
+	public MinMaxIndex(SampleStore samples) {
+		this.samples = samples;
+
+		int blocks = (samples.size() + BLOCK_SIZE - 1) >> BLOCK_SHIFT;
+		int levels = 1;
+		while((1 << (levels - 1)) < blocks)
+			levels++;
+
+		this.minimums = new int[levels][];
+		this.maximums = new int[levels][];
+
+		// level 0, straight from the samples
+		minimums[0] = new int[blocks];
+		maximums[0] = new int[blocks];
+		int[] block = new int[BLOCK_SIZE];
+		for(int b = 0; b < blocks; b++) {
+			int from = b << BLOCK_SHIFT;
+			int count = Math.min(BLOCK_SIZE, samples.size() - from);
+			samples.get(from, block, 0, count);
+
+			int min = Integer.MAX_VALUE;
+			int max = Integer.MIN_VALUE;
+			for(int i = 0; i < count; i++) {
+				if(block[i] < min)
+					min = block[i];
+				if(block[i] > max)
+					max = block[i];
+			}
+			minimums[0][b] = min;
+			maximums[0][b] = max;
+		}
+
+		// following levels, merging pairs
+		for(int l = 1; l < levels; l++) {
+			int[] prevMin = minimums[l-1];
+			int[] prevMax = maximums[l-1];
+			int count = (prevMin.length + 1) / 2;
+			minimums[l] = new int[count];
+			maximums[l] = new int[count];
+			for(int i = 0; i < count; i++) {
+				int a = 2*i;
+				int b = Math.min(2*i + 1, prevMin.length - 1);
+				minimums[l][i] = Math.min(prevMin[a], prevMin[b]);
+				maximums[l][i] = Math.max(prevMax[a], prevMax[b]);
+			}
+		}
+	}
+
+	public int size() {
+		return samples.size();
+	}
+
+	/**
+	 * @return the smallest sample of the channel
+	 */
+	public int getMinimum() {
+		return minimums.length == 0 || minimums[0].length == 0 ? 0 : minimums[minimums.length-1][0];
+	}
+
+	/**
+	 * @return the biggest sample of the channel
+	 */
+	public int getMaximum() {
+		return maximums.length == 0 || maximums[0].length == 0 ? 0 : maximums[maximums.length-1][0];
+	}
+
+	/**
+	 * Find the extremes of a range of samples
+	 * @param from		first sample, inclusive
+	 * @param to		last sample, inclusive
+	 * @param minmax	receives the minimum at index 0 and the maximum at index 1
+	 */
+	public void getRange(int from, int to, int[] minmax) {
+		if(from > to) {
+			int tmp = from;
+			from = to;
+			to = tmp;
+		}
+		from = Math.max(0, from);
+		to = Math.min(samples.size() - 1, to);
+
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+
+		int firstBlock = (from + BLOCK_SIZE - 1) >> BLOCK_SHIFT; //first complete block
+		int lastBlock = ((to + 1) >> BLOCK_SHIFT) - 1;           //last complete block
+
+		if(firstBlock > lastBlock) {
+			// no complete block, the range is small
+			for(int i = from; i <= to; i++) {
+				int v = samples.get(i);
+				if(v < min)
+					min = v;
+				if(v > max)
+					max = v;
+			}
+		} else {
+			// partial blocks at both ends
+			for(int i = from; i < firstBlock << BLOCK_SHIFT; i++) {
+				int v = samples.get(i);
+				if(v < min)
+					min = v;
+				if(v > max)
+					max = v;
+			}
+			for(int i = (lastBlock + 1) << BLOCK_SHIFT; i <= to; i++) {
+				int v = samples.get(i);
+				if(v < min)
+					min = v;
+				if(v > max)
+					max = v;
+			}
+
+			// complete blocks, taking the biggest aligned entry each time
+			int b = firstBlock;
+			while(b <= lastBlock) {
+				int level = 0;
+				while(level + 1 < minimums.length
+						&& (b & ((1 << (level + 1)) - 1)) == 0
+						&& b + (1 << (level + 1)) - 1 <= lastBlock)
+					level++;
+
+				int entry = b >> level;
+				if(minimums[level][entry] < min)
+					min = minimums[level][entry];
+				if(maximums[level][entry] > max)
+					max = maximums[level][entry];
+
+				b += 1 << level;
+			}
+		}
+
+		minmax[0] = min;
+		minmax[1] = max;
+	}
+}
@@ -0,0 +1,25 @@
+package dicomux.waveform.store;
+
+/**
+ * Read access to the samples of one channel, wherever they are kept
+ */
+public interface SampleStore {
+	/**
+	 * @return the number of samples
+	 */
+	public int size();
+
+	/**
+	 * @return the sample at the given index
+	 */
+	public int get(int index);
+
+	/**
+	 * Copy a range of samples
+	 * @param from		index of the first sample to copy
+	 * @param dst		destination array
+	 * @param offset	position of the first sample in dst
+	 * @param length	number of samples to copy
+	 */
+	public void get(int from, int[] dst, int offset, int length);
+}
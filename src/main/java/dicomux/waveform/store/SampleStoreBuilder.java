@@ -0,0 +1,19 @@
+package dicomux.waveform.store;
+
+import java.io.IOException;
+
+/**
+ * Receives the decoded samples channel by channel, block after block, 
+ * and creates the matching stores once everything has been written.
+ */
+public interface SampleStoreBuilder {
+	/**
+	 * Append samples at the end of a channel
+	 */
+	public void append(int channel, int[] samples, int offset, int length) throws IOException;
+
+	/**
+	 * @return one store per channel
+	 */
+	public SampleStore[] build() throws IOException;
+}
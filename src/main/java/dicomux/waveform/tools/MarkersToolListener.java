@@ -3,7 +3,7 @@ package dicomux.waveform.tools;
 import java.awt.event.MouseEvent;
 
 import dicomux.waveform.DrawingPanel;
-import dicomux.waveform.SampleMarker;
+import dicomux.waveform.MarkerType;
 import dicomux.waveform.WaveformPlugin;
 
 public class MarkersToolListener extends ToolMouseAdapter {
@@ -47,7 +47,7 @@ public class MarkersToolListener extends ToolMouseAdapter {
 			double sampleWidth = parent.getPreferredSize().getWidth() / parent.getSampleCount();
 			int samples = (int)Math.round(coords / sampleWidth);
 			
-			parent.shiftMarkers(plugin.getSelectedTool(), SampleMarker.Type.ANY, samples);
+			parent.shiftMarkers(plugin.getSelectedTool(), MarkerType.ANY, samples);
 			prevX = e.getX();
 		}
 	}		
@@ -3,7 +3,7 @@ package dicomux.waveform.tools;
 import java.awt.event.MouseEvent;
 
 import dicomux.waveform.DrawingPanel;
-import dicomux.waveform.SampleMarker;
+import dicomux.waveform.MarkerType;
 import dicomux.waveform.WaveformPlugin;
 
 public class MeasureToolListener extends ToolMouseAdapter {
@@ -26,11 +26,11 @@ public class MeasureToolListener extends ToolMouseAdapter {
 			return;
 		
 		if((e.getModifiersEx() & MouseEvent.BUTTON1_DOWN_MASK) == MouseEvent.BUTTON1_DOWN_MASK) {
-			parent.setMeasureMarker(parent.getHightlightedSample(), SampleMarker.Type.START);
+			parent.setMeasureMarker(parent.getHightlightedSample(), MarkerType.START);
 			parent.repaint();						
 		}
 		if((e.getModifiersEx() & MouseEvent.BUTTON3_DOWN_MASK) == MouseEvent.BUTTON3_DOWN_MASK) {
-			parent.setMeasureMarker(parent.getHightlightedSample(), SampleMarker.Type.STOP);
+			parent.setMeasureMarker(parent.getHightlightedSample(), MarkerType.STOP);
 			parent.repaint();						
 		}
 	}
@@ -40,9 +40,9 @@ public class MeasureToolListener extends ToolMouseAdapter {
 			return;
 
 		if(e.getButton() == MouseEvent.BUTTON1)
-			parent.setMeasureMarker(parent.getHightlightedSample(), SampleMarker.Type.START);
+			parent.setMeasureMarker(parent.getHightlightedSample(), MarkerType.START);
 		else if(e.getButton() == MouseEvent.BUTTON3)
-			parent.setMeasureMarker(parent.getHightlightedSample(), SampleMarker.Type.STOP);
+			parent.setMeasureMarker(parent.getHightlightedSample(), MarkerType.STOP);
 		else if(e.getButton() == MouseEvent.BUTTON2) {
 			parent.removeMarkers();
 			plugin.getAnnotations().removeMeasures(null, channel);